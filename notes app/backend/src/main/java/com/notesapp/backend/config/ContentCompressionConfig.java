@@ -0,0 +1,26 @@
+package com.notesapp.backend.config;
+
+import com.notesapp.backend.entities.NoteContentCodec;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class ContentCompressionConfig {
+
+    @Value("${notes.content.compression.enabled:false}")
+    private boolean enabled;
+
+    @Value("${notes.content.compression.threshold-chars:16384}")
+    private int thresholdChars;
+
+    @Value("${notes.content.compression.level:1}")
+    private int level;
+
+    @PostConstruct
+    public void configureCodec() {
+        NoteContentCodec.configure(enabled, thresholdChars, level);
+        System.out.println("[ContentCompressionConfig] Note content compression "
+                + (enabled ? "enabled above " + thresholdChars + " chars (level " + level + ")" : "disabled"));
+    }
+}
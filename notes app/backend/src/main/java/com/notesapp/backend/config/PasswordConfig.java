@@ -1,15 +1,35 @@
 package com.notesapp.backend.config;
 
+import com.notesapp.backend.security.BoundedPasswordEncoder;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
 @Configuration
 public class PasswordConfig {
     
-    @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    @Value("${notes.password.target-hash-ms:250}")
+    private long targetHashMillis;
+    
+    @Value("${notes.password.min-strength:10}")
+    private int minStrength;
+    
+    @Value("${notes.password.max-strength:14}")
+    private int maxStrength;
+    
+    @Value("${notes.password.queue-capacity:64}")
+    private int queueCapacity;
+    
+    @Value("${notes.password.max-wait-ms:3000}")
+    private long maxWaitMillis;
+    
+    // Hashing gets one thread per core; extra requests wait in a bounded queue or are rejected with 503
+    @Bean(destroyMethod = "shutdown")
+    public PasswordEncoder passwordEncoder(MeterRegistry meterRegistry) {
+        int strength = BoundedPasswordEncoder.calibrateStrength(targetHashMillis, minStrength, maxStrength);
+        int threads = Runtime.getRuntime().availableProcessors();
+        return new BoundedPasswordEncoder(strength, threads, queueCapacity, maxWaitMillis, meterRegistry);
     }
 }
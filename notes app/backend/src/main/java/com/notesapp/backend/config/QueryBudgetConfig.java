@@ -0,0 +1,86 @@
+package com.notesapp.backend.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.lang.NonNull;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+
+// Counts SQL statements per request so N+1 patterns (lazy associations touched in a loop or during
+// JSON serialization with open-in-view) show up as soon as a route starts issuing more queries than it should.
+// Each request is recorded in the http.server.queries summary by route, and one over max-per-request is logged.
+// Work a route hands to another thread (streamed exports, SSE pushes, background uploads) is not counted.
+@Configuration
+@ConditionalOnProperty(name = "notes.query-budget.enabled", havingValue = "true", matchIfMissing = true)
+public class QueryBudgetConfig {
+
+    // Wraps the finished "dataSource" bean, after ShardingConfig has put the shard router in place
+    @Bean
+    public static BeanPostProcessor queryCountingDataSourcePostProcessor() {
+        return new CountingPostProcessor();
+    }
+
+    @Bean
+    public FilterRegistrationBean<OncePerRequestFilter> queryBudgetFilter(
+            MeterRegistry meterRegistry,
+            @Value("${notes.query-budget.max-per-request:20}") int maxPerRequest) {
+        OncePerRequestFilter filter = new OncePerRequestFilter() {
+            @Override
+            protected void doFilterInternal(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response,
+                                            @NonNull FilterChain filterChain) throws ServletException, IOException {
+                QueryCounter.start();
+                try {
+                    filterChain.doFilter(request, response);
+                } finally {
+                    int queries = QueryCounter.stop();
+                    // The mapped pattern keeps ids out of metric tags and log lines
+                    Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+                    String route = pattern != null ? pattern.toString() : "unmapped";
+                    DistributionSummary.builder("http.server.queries")
+                            .tag("method", request.getMethod())
+                            .tag("uri", route)
+                            .register(meterRegistry)
+                            .record(queries);
+                    if (queries > maxPerRequest) {
+                        System.err.println("[QueryBudget] " + request.getMethod() + " " + route + " ran " + queries
+                                + " queries (budget " + maxPerRequest + ")");
+                    }
+                }
+            }
+        };
+        FilterRegistrationBean<OncePerRequestFilter> registration = new FilterRegistrationBean<>(filter);
+        // Ahead of the security chain, so the user lookup behind every authenticated request is counted too
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+
+    private static class CountingPostProcessor implements BeanPostProcessor, Ordered {
+
+        @Override
+        public Object postProcessAfterInitialization(@NonNull Object bean, @NonNull String beanName) {
+            if (!"dataSource".equals(beanName) || !(bean instanceof DataSource dataSource)) {
+                return bean;
+            }
+            return new QueryCountingDataSource(dataSource);
+        }
+
+        @Override
+        public int getOrder() {
+            return Ordered.LOWEST_PRECEDENCE;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.notesapp.backend.config;
+
+// Counts the SQL statements sent on the current thread between start() and stop().
+// QueryBudgetConfig wraps every request in it; tests can do the same around a single call.
+// QueryCountingDataSource feeds it, so Hibernate and JdbcTemplate statements are counted alike.
+public final class QueryCounter {
+
+    private static final ThreadLocal<int[]> COUNT = new ThreadLocal<>();
+
+    private QueryCounter() {
+    }
+
+    public static void start() {
+        COUNT.set(new int[1]);
+    }
+
+    // Statements since start(), or 0 when the thread is not counting
+    public static int current() {
+        int[] count = COUNT.get();
+        return count != null ? count[0] : 0;
+    }
+
+    public static int stop() {
+        int count = current();
+        COUNT.remove();
+        return count;
+    }
+
+    static void increment() {
+        int[] count = COUNT.get();
+        if (count != null) {
+            count[0]++;
+        }
+    }
+}
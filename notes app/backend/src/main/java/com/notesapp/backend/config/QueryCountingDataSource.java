@@ -0,0 +1,71 @@
+package com.notesapp.backend.config;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+// Reports every statement prepared or executed on its connections to QueryCounter. A prepared statement counts
+// once however many batch entries it carries; plain statements count each execute call.
+public class QueryCountingDataSource extends DelegatingDataSource implements AutoCloseable {
+
+    public QueryCountingDataSource(DataSource targetDataSource) {
+        super(targetDataSource);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return countingConnection(obtainTargetDataSource().getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return countingConnection(obtainTargetDataSource().getConnection(username, password));
+    }
+
+    // Replaces the original bean, so shutdown closes the pools through here
+    @Override
+    public void close() throws Exception {
+        if (obtainTargetDataSource() instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+
+    private static Connection countingConnection(Connection connection) {
+        return proxy(Connection.class, connection, (proxy, method, args) -> {
+            String name = method.getName();
+            if (name.equals("prepareStatement") || name.equals("prepareCall")) {
+                QueryCounter.increment();
+            }
+            Object result = invoke(connection, method, args);
+            if (name.equals("createStatement")) {
+                Statement statement = (Statement) result;
+                return proxy(Statement.class, statement, (statementProxy, statementMethod, statementArgs) -> {
+                    if (statementMethod.getName().startsWith("execute")) {
+                        QueryCounter.increment();
+                    }
+                    return invoke(statement, statementMethod, statementArgs);
+                });
+            }
+            return result;
+        });
+    }
+
+    private static <T> T proxy(Class<T> type, T target, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(QueryCountingDataSource.class.getClassLoader(), new Class<?>[] { type }, handler));
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+}
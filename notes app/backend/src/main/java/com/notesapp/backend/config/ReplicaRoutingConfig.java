@@ -0,0 +1,119 @@
+package com.notesapp.backend.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.PhysicalConnectionHandlingMode;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.lang.NonNull;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+// Active only when replicas are configured, e.g. notes.datasource.replica-urls=jdbc:postgresql://replica1/notes,...
+// Without it the auto-configured single DataSource is used unchanged.
+@Configuration
+@ConditionalOnProperty("notes.datasource.replica-urls")
+public class ReplicaRoutingConfig {
+
+    private static final Set<String> READ_METHODS = Set.of("GET", "HEAD", "OPTIONS");
+
+    @Value("${notes.datasource.replica-urls}")
+    private List<String> replicaUrls;
+
+    @Value("${notes.datasource.replica-username:${spring.datasource.username}}")
+    private String replicaUsername;
+
+    @Value("${notes.datasource.replica-password:${spring.datasource.password}}")
+    private String replicaPassword;
+
+    @Value("${notes.datasource.replica-max-lag-ms:2000}")
+    private long maxLagMillis;
+
+    @Value("${notes.datasource.read-your-writes-ms:5000}")
+    private long readYourWritesMillis;
+
+    @Bean(destroyMethod = "close")
+    public ReplicaRoutingDataSource replicaRoutingDataSource(DataSourceProperties properties, Environment environment) {
+        HikariDataSource primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        bindHikariSettings(primary, environment);
+        primary.setPoolName("primary");
+
+        List<HikariDataSource> replicas = new ArrayList<>();
+        for (int i = 0; i < replicaUrls.size(); i++) {
+            HikariDataSource replica = properties.initializeDataSourceBuilder()
+                    .type(HikariDataSource.class)
+                    .url(replicaUrls.get(i).trim())
+                    .username(replicaUsername)
+                    .password(replicaPassword)
+                    .build();
+            bindHikariSettings(replica, environment);
+            replica.setPoolName("replica-" + i);
+            replica.setReadOnly(true);
+            replicas.add(replica);
+        }
+        System.out.println("[ReplicaRoutingConfig] Routing read-only transactions to " + replicas.size() + " replica(s)");
+        return new ReplicaRoutingDataSource(primary, replicas, maxLagMillis, readYourWritesMillis);
+    }
+
+    // Defers picking a target until the first statement, when the transaction's read-only flag is set
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+    }
+
+    // With open-in-view Hibernate would otherwise hold the first connection for the whole request,
+    // so a write following a read-only transaction would land on the replica connection
+    @Bean
+    public HibernatePropertiesCustomizer releaseConnectionsAfterTransaction() {
+        return properties -> properties.put(AvailableSettings.CONNECTION_HANDLING,
+                PhysicalConnectionHandlingMode.DELAYED_ACQUISITION_AND_RELEASE_AFTER_TRANSACTION);
+    }
+
+    // Marks the client as a recent writer at the start and end of every non-read request
+    @Bean
+    public FilterRegistrationBean<OncePerRequestFilter> readYourWritesFilter(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        OncePerRequestFilter filter = new OncePerRequestFilter() {
+            @Override
+            protected void doFilterInternal(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response,
+                                            @NonNull FilterChain filterChain) throws ServletException, IOException {
+                boolean write = !READ_METHODS.contains(request.getMethod());
+                if (write) {
+                    replicaRoutingDataSource.recordWrite();
+                }
+                try {
+                    filterChain.doFilter(request, response);
+                } finally {
+                    if (write) {
+                        replicaRoutingDataSource.recordWrite();
+                    }
+                }
+            }
+        };
+        return new FilterRegistrationBean<>(filter);
+    }
+
+    // Keeps spring.datasource.hikari.* (pool size, reWriteBatchedInserts, ...) for every pool
+    private void bindHikariSettings(HikariDataSource dataSource, Environment environment) {
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(dataSource));
+    }
+}
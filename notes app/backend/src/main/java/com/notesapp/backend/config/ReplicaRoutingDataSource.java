@@ -0,0 +1,153 @@
+package com.notesapp.backend.config;
+
+import com.notesapp.backend.entities.User;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Sends read-only transactions to a replica and everything else to the primary. Replicas that are lagging
+// or unreachable are skipped, and a client that wrote recently keeps reading from the primary for a short
+// window, so nobody reads back an older version of their own change.
+// Must be wrapped in a LazyConnectionDataSourceProxy: the read-only flag is only known after the
+// transaction has begun, which is after the transaction manager asked for a connection.
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements Closeable {
+
+    private static final String PRIMARY = "primary";
+
+    // 0 when caught up; otherwise how far the last replayed transaction is behind
+    private static final String LAG_QUERY = "SELECT CASE WHEN NOT pg_is_in_recovery() "
+            + "OR pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 "
+            + "ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000, 0) END";
+
+    private final HikariDataSource primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final long maxLagMillis;
+    private final long readYourWritesNanos;
+    private final Map<String, Long> lastWriteByClient = new ConcurrentHashMap<>();
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    public ReplicaRoutingDataSource(HikariDataSource primary, List<HikariDataSource> replicaDataSources,
+                                    long maxLagMillis, long readYourWritesMillis) {
+        this.primary = primary;
+        this.maxLagMillis = maxLagMillis;
+        this.readYourWritesNanos = TimeUnit.MILLISECONDS.toNanos(readYourWritesMillis);
+
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        for (int i = 0; i < replicaDataSources.size(); i++) {
+            Replica replica = new Replica("replica-" + i, replicaDataSources.get(i));
+            replicas.add(replica);
+            targets.put(replica.key, replica.dataSource);
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly() || wroteRecently()) {
+            return PRIMARY;
+        }
+
+        int size = replicas.size();
+        int start = Math.floorMod(nextReplica.getAndIncrement(), size);
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (replica.healthy) {
+                return replica.key;
+            }
+        }
+        return PRIMARY;
+    }
+
+    public void recordWrite() {
+        String client = currentClient();
+        if (client != null) {
+            lastWriteByClient.put(client, System.nanoTime());
+        }
+    }
+
+    private boolean wroteRecently() {
+        String client = currentClient();
+        if (client == null) {
+            return false;
+        }
+        Long lastWrite = lastWriteByClient.get(client);
+        return lastWrite != null && System.nanoTime() - lastWrite < readYourWritesNanos;
+    }
+
+    // Signed-in users by id; anonymous share-link editors by address
+    private String currentClient() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof User user) {
+            return "user:" + user.getId();
+        }
+        if (RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes) {
+            HttpServletRequest request = attributes.getRequest();
+            return "ip:" + request.getRemoteAddr();
+        }
+        return null;
+    }
+
+    @Scheduled(fixedDelayString = "${notes.datasource.replica-lag-check-ms:1000}")
+    public void checkReplicas() {
+        for (Replica replica : replicas) {
+            boolean healthy;
+            try (Connection connection = replica.dataSource.getConnection();
+                 Statement statement = connection.createStatement();
+                 ResultSet rs = statement.executeQuery(LAG_QUERY)) {
+                rs.next();
+                long lagMillis = rs.getLong(1);
+                healthy = lagMillis <= maxLagMillis;
+                if (!healthy && replica.healthy) {
+                    System.err.println("[ReplicaRoutingDataSource] " + replica.key + " is " + lagMillis + " ms behind, reading from primary");
+                }
+            } catch (Exception e) {
+                healthy = false;
+                if (replica.healthy) {
+                    System.err.println("[ReplicaRoutingDataSource] " + replica.key + " unavailable, reading from primary: " + e.getMessage());
+                }
+            }
+            replica.healthy = healthy;
+        }
+
+        long cutoff = System.nanoTime() - readYourWritesNanos;
+        lastWriteByClient.values().removeIf(lastWrite -> lastWrite - cutoff < 0);
+    }
+
+    @Override
+    public void close() {
+        replicas.forEach(replica -> replica.dataSource.close());
+        primary.close();
+    }
+
+    private static final class Replica {
+        private final String key;
+        private final HikariDataSource dataSource;
+        // Unproven until the first lag check passes
+        private volatile boolean healthy;
+
+        Replica(String key, HikariDataSource dataSource) {
+            this.key = key;
+            this.dataSource = dataSource;
+        }
+    }
+}
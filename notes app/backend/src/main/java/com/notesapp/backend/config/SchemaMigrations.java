@@ -0,0 +1,161 @@
+package com.notesapp.backend.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+// Small idempotent fixes that spring.jpa.hibernate.ddl-auto=update cannot apply on its own.
+// Depends on the EntityManagerFactory so it runs after Hibernate has updated the schema.
+@Component
+public class SchemaMigrations {
+
+    // Tables with IDENTITY ids that can live on any shard
+    private static final List<String> SHARDED_IDENTITY_TABLES = List.of("note_images", "share_links", "note_revisions", "user_feedback");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ShardRegistry shardRegistry;
+    private final ObjectProvider<ShardSchemaInitializer> shardSchemaInitializer;
+
+    public SchemaMigrations(JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory,
+                            ShardRegistry shardRegistry, ObjectProvider<ShardSchemaInitializer> shardSchemaInitializer) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.shardRegistry = shardRegistry;
+        this.shardSchemaInitializer = shardSchemaInitializer;
+    }
+
+    @PostConstruct
+    public void migrate() {
+        shardSchemaInitializer.ifAvailable(ShardSchemaInitializer::createSchemas);
+        shardRegistry.forEachShard(shard -> {
+            alignNotesSequence(shard);
+            convertShareIdsToUuid();
+            createLegacyImageMigrationTables();
+            createContentCompressionCheckpoint();
+            if (shard != ShardContext.DIRECTORY_SHARD) {
+                offsetIdentitySequences(shard);
+            }
+        });
+        if (shardRegistry.isSharded()) {
+            createShareLinkForwards();
+        }
+        createIdempotencyKeys();
+        createFailedImageDeletes();
+    }
+
+    // Notes moved from IDENTITY to the pooled notes_seq; make sure the sequence hands out ids past existing rows
+    // and, on shard N, from N << 40 up, so a note id is unique across shards and can move between them
+    private void alignNotesSequence(int shard) {
+        try {
+            Long maxId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM notes", Long.class);
+            Long lastValue = jdbcTemplate.queryForObject("SELECT last_value FROM notes_seq", Long.class);
+            long floor = Math.max(maxId != null ? maxId : 0, ShardRegistry.firstIdOf(shard));
+
+            if (lastValue != null && lastValue <= floor) {
+                // Pooled optimizer treats the sequence value as the top of a 50-id block
+                jdbcTemplate.queryForObject("SELECT setval('notes_seq', ?, false)", Long.class, floor + 50);
+                System.out.println("[SchemaMigrations] notes_seq on shard " + shard + " moved past id " + floor);
+            }
+        } catch (Exception e) {
+            System.err.println("[SchemaMigrations] Could not align notes_seq: " + e.getMessage());
+        }
+    }
+
+    // share_id was a VARCHAR holding UUID text; ddl-auto=update never changes a column type.
+    // The rewrite rebuilds the unique index on 16-byte keys instead of 36-character strings.
+    private void convertShareIdsToUuid() {
+        try {
+            String dataType = jdbcTemplate.queryForObject(
+                    "SELECT data_type FROM information_schema.columns WHERE table_name = 'share_links' AND column_name = 'share_id'",
+                    String.class);
+
+            if (dataType != null && !"uuid".equals(dataType)) {
+                jdbcTemplate.execute("ALTER TABLE share_links ALTER COLUMN share_id TYPE uuid USING share_id::uuid");
+                System.out.println("[SchemaMigrations] share_links.share_id converted from " + dataType + " to uuid");
+            }
+        } catch (Exception e) {
+            System.err.println("[SchemaMigrations] Could not convert share_links.share_id to uuid: " + e.getMessage());
+        }
+    }
+
+    // Same id ranges for the IDENTITY tables of the other shards
+    private void offsetIdentitySequences(int shard) {
+        long floor = ShardRegistry.firstIdOf(shard);
+        for (String table : SHARDED_IDENTITY_TABLES) {
+            try {
+                String sequence = jdbcTemplate.queryForObject("SELECT pg_get_serial_sequence(?, 'id')", String.class, table);
+                Long lastValue = jdbcTemplate.queryForObject("SELECT last_value FROM " + sequence, Long.class);
+                if (lastValue != null && lastValue < floor) {
+                    jdbcTemplate.queryForObject("SELECT setval(?::regclass, ?)", Long.class, sequence, floor);
+                    System.out.println("[SchemaMigrations] " + sequence + " on shard " + shard + " starts after id " + floor);
+                }
+            } catch (Exception e) {
+                System.err.println("[SchemaMigrations] Could not offset " + table + " ids on shard " + shard + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // Share links whose owner was moved off the shard encoded in their id; read by ShardRegistry
+    private void createShareLinkForwards() {
+        try {
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS share_link_forwards (share_id uuid PRIMARY KEY, shard integer NOT NULL)");
+        } catch (Exception e) {
+            System.err.println("[SchemaMigrations] Could not create share_link_forwards: " + e.getMessage());
+        }
+    }
+
+    // Checkpoint and redirect map for LegacyImageMigrator, kept on each shard next to its note_images
+    private void createLegacyImageMigrationTables() {
+        try {
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS legacy_image_migration (" +
+                    "id integer PRIMARY KEY, last_image_id bigint NOT NULL, migrated bigint NOT NULL, updated_at timestamp)");
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS migrated_images (image_id bigint PRIMARY KEY, url text NOT NULL)");
+        } catch (Exception e) {
+            System.err.println("[SchemaMigrations] Could not create legacy image migration tables: " + e.getMessage());
+        }
+    }
+
+    // How far ContentCompressionJob has scanned on each shard, and with which threshold
+    private void createContentCompressionCheckpoint() {
+        try {
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS content_compression_checkpoint (" +
+                    "id integer PRIMARY KEY, last_note_id bigint NOT NULL, threshold_chars integer NOT NULL, updated_at timestamp)");
+        } catch (Exception e) {
+            System.err.println("[SchemaMigrations] Could not create content_compression_checkpoint: " + e.getMessage());
+        }
+    }
+
+    // Stored responses of requests sent with an Idempotency-Key; written and swept by IdempotencyService
+    private void createIdempotencyKeys() {
+        try {
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS idempotency_keys (" +
+                    "user_id bigint NOT NULL, " +
+                    "idempotency_key varchar(255) NOT NULL, " +
+                    "fingerprint varchar(64) NOT NULL, " +
+                    "response_status integer, " +
+                    "response_body text, " +
+                    "created_at timestamp NOT NULL, " +
+                    "expires_at timestamp NOT NULL, " +
+                    "PRIMARY KEY (user_id, idempotency_key))");
+            jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_idempotency_keys_expires_at ON idempotency_keys (expires_at)");
+        } catch (Exception e) {
+            System.err.println("[SchemaMigrations] Could not create idempotency_keys: " + e.getMessage());
+        }
+    }
+
+    // Cloudinary public ids whose destroy failed; written and retried by FileStorageService
+    private void createFailedImageDeletes() {
+        try {
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS failed_image_deletes (" +
+                    "public_id varchar(255) PRIMARY KEY, " +
+                    "attempts integer NOT NULL, " +
+                    "failed_at timestamp NOT NULL, " +
+                    "last_error text)");
+        } catch (Exception e) {
+            System.err.println("[SchemaMigrations] Could not create failed_image_deletes: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.notesapp.backend.config;
+
+import java.util.function.Supplier;
+
+// The shard the current thread talks to. Set per request by the shard filter and per shard by background jobs.
+// Only connections acquired afterwards are affected: switching shards inside a running transaction has no effect.
+public final class ShardContext {
+
+    // users and share_link_forwards live here; so does all data when sharding is off
+    public static final int DIRECTORY_SHARD = 0;
+
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+    private ShardContext() {}
+
+    public static int current() {
+        Integer shard = CURRENT.get();
+        return shard != null ? shard : DIRECTORY_SHARD;
+    }
+
+    public static void set(int shard) {
+        CURRENT.set(shard);
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+
+    public static <T> T callOn(int shard, Supplier<T> work) {
+        Integer previous = CURRENT.get();
+        CURRENT.set(shard);
+        try {
+            return work.get();
+        } finally {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+
+    public static void runOn(int shard, Runnable work) {
+        callOn(shard, () -> {
+            work.run();
+            return null;
+        });
+    }
+}
@@ -0,0 +1,171 @@
+package com.notesapp.backend.config;
+
+import com.notesapp.backend.services.InvalidationBus;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+
+// Knows how many shards exist and which shard a user or share link lives on.
+// Share ids carry their shard in the first byte (a version 8 UUID), so public links are routed without a
+// directory lookup; only links of users moved by the resharding tool need an entry in share_link_forwards.
+@Component
+public class ShardRegistry {
+
+    private static final int MAX_SHARDS = 256;
+    // Shard N hands out ids from N << 40, so ids stay unique when rows move between shards
+    private static final int SHARD_ID_BITS = 40;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int shardCount;
+    private final ExecutorService fanOutExecutor;
+    private final Map<UUID, Integer> forwards = new ConcurrentHashMap<>();
+
+    public ShardRegistry(JdbcTemplate jdbcTemplate, InvalidationBus invalidationBus,
+                         @Value("${notes.shards.urls:}") List<String> shardUrls) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.shardCount = shardUrls.size() + 1;
+        if (shardCount > MAX_SHARDS) {
+            throw new IllegalStateException("At most " + MAX_SHARDS + " shards can be encoded in a share id");
+        }
+
+        AtomicInteger counter = new AtomicInteger();
+        this.fanOutExecutor = shardCount > 1 ? Executors.newFixedThreadPool(shardCount, runnable -> {
+            Thread thread = new Thread(runnable, "shard-fan-out-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+
+        invalidationBus.subscribe(InvalidationBus.SHARE_FORWARDS, ignored -> loadForwards());
+        invalidationBus.onReset(this::loadForwards);
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public boolean isSharded() {
+        return shardCount > 1;
+    }
+
+    // Fixed at signup; only the resharding tool changes it afterwards
+    public int shardForNewUser(String email) {
+        return Math.floorMod(email.toLowerCase(Locale.ROOT).hashCode(), shardCount);
+    }
+
+    public int shardOfShareId(UUID shareId) {
+        Integer forwarded = forwards.get(shareId);
+        return forwarded != null ? forwarded : encodedShard(shareId);
+    }
+
+    // Share-link writes carry no owner principal, so the resharding flag is looked up through the link:
+    // the owner on the link's shard, then their migrating flag in the directory
+    public boolean isShareOwnerMigrating(UUID shareId, int shard) {
+        List<Long> owners = ShardContext.callOn(shard, () -> jdbcTemplate.queryForList(
+                "SELECT n.user_id FROM share_links s JOIN notes n ON n.id = s.note_id WHERE s.share_id = ?",
+                Long.class, shareId));
+        if (owners.isEmpty()) {
+            return false;
+        }
+        List<Boolean> migrating = ShardContext.callOn(ShardContext.DIRECTORY_SHARD, () -> jdbcTemplate.queryForList(
+                "SELECT migrating FROM users WHERE id = ?", Boolean.class, owners.get(0)));
+        return !migrating.isEmpty() && Boolean.TRUE.equals(migrating.get(0));
+    }
+
+    // Random v4 id with the version set to 8 and the first byte replaced by the shard
+    public static UUID newShareId(int shard) {
+        UUID random = UUID.randomUUID();
+        long msb = (random.getMostSignificantBits() & 0x00FFFFFFFFFF0FFFL) | ((long) shard << 56) | 0x8000L;
+        return new UUID(msb, random.getLeastSignificantBits());
+    }
+
+    // Links created before sharding are random v4 ids and live on the directory shard
+    public static int encodedShard(UUID shareId) {
+        return shareId.version() == 8 ? (int) (shareId.getMostSignificantBits() >>> 56) : ShardContext.DIRECTORY_SHARD;
+    }
+
+    public static long firstIdOf(int shard) {
+        return (long) shard << SHARD_ID_BITS;
+    }
+
+    // Shard whose id range contains the id; rows copied by the resharding tool get ids from their new shard
+    public static int shardOfId(long id) {
+        return (int) (id >>> SHARD_ID_BITS);
+    }
+
+    public void forEachShard(IntConsumer work) {
+        for (int shard = 0; shard < shardCount; shard++) {
+            int target = shard;
+            ShardContext.runOn(target, () -> work.accept(target));
+        }
+    }
+
+    // Runs the work on every shard at once and returns the results in shard order
+    public <T> List<T> fanOut(IntFunction<T> work) {
+        if (!isSharded()) {
+            return List.of(work.apply(ShardContext.DIRECTORY_SHARD));
+        }
+
+        List<CompletableFuture<T>> futures = new ArrayList<>();
+        for (int shard = 0; shard < shardCount; shard++) {
+            int target = shard;
+            futures.add(CompletableFuture.supplyAsync(
+                    () -> ShardContext.callOn(target, () -> work.apply(target)), fanOutExecutor));
+        }
+        try {
+            return futures.stream().map(CompletableFuture::join).toList();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    public void addForward(UUID shareId, int shard) {
+        forwards.put(shareId, shard);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${notes.shards.forwards-refresh-ms:60000}", initialDelayString = "${notes.shards.forwards-refresh-ms:60000}")
+    public void loadForwards() {
+        if (!isSharded()) {
+            return;
+        }
+        try {
+            Map<UUID, Integer> loaded = new ConcurrentHashMap<>();
+            ShardContext.runOn(ShardContext.DIRECTORY_SHARD, () ->
+                    jdbcTemplate.query("SELECT share_id, shard FROM share_link_forwards", rs -> {
+                        loaded.put(rs.getObject(1, UUID.class), rs.getInt(2));
+                    }));
+            forwards.putAll(loaded);
+            forwards.keySet().retainAll(loaded.keySet());
+        } catch (Exception e) {
+            System.err.println("[ShardRegistry] Could not load share link forwards: " + e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (fanOutExecutor != null) {
+            fanOutExecutor.shutdown();
+        }
+    }
+}
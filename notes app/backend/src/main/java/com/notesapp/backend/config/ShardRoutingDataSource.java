@@ -0,0 +1,54 @@
+package com.notesapp.backend.config;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Picks the shard database from ShardContext when a connection is requested.
+// Shard 0 is the application's original DataSource, so it still composes with replica routing.
+public class ShardRoutingDataSource extends AbstractRoutingDataSource implements Closeable {
+
+    private final List<DataSource> shards;
+
+    public ShardRoutingDataSource(List<DataSource> shards) {
+        this.shards = List.copyOf(shards);
+
+        Map<Object, Object> targets = new HashMap<>();
+        for (int i = 0; i < shards.size(); i++) {
+            targets.put(i, shards.get(i));
+        }
+        // No default target: an unknown shard must fail loudly rather than read or write the directory shard
+        setTargetDataSources(targets);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return ShardContext.current();
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    public DataSource getShard(int shard) {
+        return shards.get(shard);
+    }
+
+    @Override
+    public void close() {
+        // Replaces the original bean, so shutdown closes shard 0 through here as well
+        for (int i = 0; i < shards.size(); i++) {
+            if (shards.get(i) instanceof Closeable closeable) {
+                try {
+                    closeable.close();
+                } catch (Exception e) {
+                    System.err.println("[ShardRoutingDataSource] Failed to close shard " + i + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.notesapp.backend.config;
+
+import com.notesapp.backend.entities.User;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateSettings;
+import org.springframework.boot.autoconfigure.orm.jpa.JpaProperties;
+import org.springframework.boot.orm.jpa.EntityManagerFactoryBuilder;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+
+import java.util.Map;
+
+// The application's EntityManagerFactory only updates the schema of shard 0. Each other shard gets the same
+// entity mappings applied once at startup through a short-lived factory with ddl-auto=update.
+public class ShardSchemaInitializer {
+
+    private final ShardRoutingDataSource shardRoutingDataSource;
+    private final EntityManagerFactoryBuilder entityManagerFactoryBuilder;
+    private final JpaProperties jpaProperties;
+    private final HibernateProperties hibernateProperties;
+
+    public ShardSchemaInitializer(ShardRoutingDataSource shardRoutingDataSource,
+                                  EntityManagerFactoryBuilder entityManagerFactoryBuilder,
+                                  JpaProperties jpaProperties, HibernateProperties hibernateProperties) {
+        this.shardRoutingDataSource = shardRoutingDataSource;
+        this.entityManagerFactoryBuilder = entityManagerFactoryBuilder;
+        this.jpaProperties = jpaProperties;
+        this.hibernateProperties = hibernateProperties;
+    }
+
+    public void createSchemas() {
+        // Same naming strategies as the main factory, so column names match on every shard
+        Map<String, Object> properties = hibernateProperties.determineHibernateProperties(
+                jpaProperties.getProperties(), new HibernateSettings().ddlAuto(() -> "update"));
+
+        for (int shard = 1; shard < shardRoutingDataSource.getShardCount(); shard++) {
+            LocalContainerEntityManagerFactoryBean factory = entityManagerFactoryBuilder
+                    .dataSource(shardRoutingDataSource.getShard(shard))
+                    .packages(User.class)
+                    .properties(properties)
+                    .persistenceUnit("shard-" + shard)
+                    .build();
+            factory.afterPropertiesSet();
+            factory.destroy();
+            System.out.println("[ShardSchemaInitializer] Schema updated on shard " + shard);
+        }
+    }
+}
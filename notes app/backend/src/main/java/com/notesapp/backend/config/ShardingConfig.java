@@ -0,0 +1,180 @@
+package com.notesapp.backend.config;
+
+import com.notesapp.backend.entities.User;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.PhysicalConnectionHandlingMode;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.autoconfigure.orm.jpa.JpaProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.boot.orm.jpa.EntityManagerFactoryBuilder;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.lang.NonNull;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+// Active only when extra shards are configured, e.g. notes.shards.urls=jdbc:postgresql://shard1/notes,...
+// The existing database stays shard 0 and keeps the users table; notes, images, revisions, share links and
+// feedback live on the shard assigned to their owner.
+@Configuration
+@ConditionalOnProperty("notes.shards.urls")
+public class ShardingConfig {
+
+    private static final String PUBLIC_NOTES_PREFIX = "/api/public/notes/";
+    private static final Set<String> READ_METHODS = Set.of("GET", "HEAD", "OPTIONS");
+
+    // Wraps whichever "dataSource" bean exists (plain Hikari or the replica router) as shard 0
+    @Bean
+    public static BeanPostProcessor shardRoutingDataSourcePostProcessor(Environment environment) {
+        return new ShardRoutingPostProcessor(environment);
+    }
+
+    // Runs before other data source wrappers (QueryBudgetConfig's), so they see every shard and not just shard 0
+    private static class ShardRoutingPostProcessor implements BeanPostProcessor, Ordered {
+
+        private final Environment environment;
+
+        ShardRoutingPostProcessor(Environment environment) {
+            this.environment = environment;
+        }
+
+        @Override
+        public int getOrder() {
+            return Ordered.HIGHEST_PRECEDENCE;
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(@NonNull Object bean, @NonNull String beanName) {
+            if (!"dataSource".equals(beanName) || !(bean instanceof DataSource primary)) {
+                return bean;
+            }
+            Binder binder = Binder.get(environment);
+            List<String> urls = binder.bind("notes.shards.urls", Bindable.listOf(String.class)).orElse(List.of());
+            String username = environment.getProperty("notes.shards.username", environment.getProperty("spring.datasource.username"));
+            String password = environment.getProperty("notes.shards.password", environment.getProperty("spring.datasource.password"));
+
+            List<DataSource> shards = new ArrayList<>();
+            shards.add(primary);
+            for (String url : urls) {
+                HikariDataSource shard = DataSourceBuilder.create()
+                        .type(HikariDataSource.class)
+                        .url(url.trim())
+                        .username(username)
+                        .password(password)
+                        .build();
+                // Keeps spring.datasource.hikari.* (pool size, reWriteBatchedInserts, ...) for every shard
+                binder.bind("spring.datasource.hikari", Bindable.ofInstance(shard));
+                shard.setPoolName("shard-" + shards.size());
+                shards.add(shard);
+            }
+            System.out.println("[ShardingConfig] Routing user data across " + shards.size() + " shards");
+            // Returned in place of the original bean, so the container will not initialize it
+            ShardRoutingDataSource routing = new ShardRoutingDataSource(shards);
+            routing.afterPropertiesSet();
+            return routing;
+        }
+    }
+
+    @Bean
+    public ShardSchemaInitializer shardSchemaInitializer(DataSource dataSource,
+                                                         EntityManagerFactoryBuilder entityManagerFactoryBuilder,
+                                                         JpaProperties jpaProperties,
+                                                         HibernateProperties hibernateProperties) throws Exception {
+        return new ShardSchemaInitializer(dataSource.unwrap(ShardRoutingDataSource.class),
+                entityManagerFactoryBuilder, jpaProperties, hibernateProperties);
+    }
+
+    // With open-in-view Hibernate would otherwise hold the request's first connection, so a users lookup
+    // on shard 0 would pin the rest of the request to shard 0
+    @Bean
+    public HibernatePropertiesCustomizer releaseShardConnectionsAfterTransaction() {
+        return properties -> properties.put(AvailableSettings.CONNECTION_HANDLING,
+                PhysicalConnectionHandlingMode.DELAYED_ACQUISITION_AND_RELEASE_AFTER_TRANSACTION);
+    }
+
+    // Registered after the security chain so the authenticated user is known
+    @Bean
+    public FilterRegistrationBean<OncePerRequestFilter> shardFilter(ShardRegistry shardRegistry) {
+        OncePerRequestFilter filter = new OncePerRequestFilter() {
+            @Override
+            protected void doFilterInternal(@NonNull HttpServletRequest request, @NonNull HttpServletResponse response,
+                                            @NonNull FilterChain filterChain) throws ServletException, IOException {
+                // Public links name their shard themselves; the frontend sends its Bearer token on these too,
+                // so the caller's own shard must not decide where another user's note is read or written
+                UUID shareId = publicShareId(request.getRequestURI().substring(request.getContextPath().length()));
+                boolean write = !READ_METHODS.contains(request.getMethod());
+                int shard = ShardContext.DIRECTORY_SHARD;
+
+                if (shareId != null) {
+                    shard = shardRegistry.shardOfShareId(shareId);
+                    if (write && shardRegistry.isShareOwnerMigrating(shareId, shard)) {
+                        rejectWhileMigrating(response, "This note is being moved, please try again shortly");
+                        return;
+                    }
+                } else {
+                    Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+                    if (authentication != null && authentication.getPrincipal() instanceof User user) {
+                        // The resharding tool is copying this user's data; writes now would be left behind
+                        if (user.isMigrating() && write) {
+                            rejectWhileMigrating(response, "Your notes are being moved, please try again shortly");
+                            return;
+                        }
+                        shard = user.getShard();
+                    }
+                }
+
+                ShardContext.set(shard);
+                try {
+                    filterChain.doFilter(request, response);
+                } finally {
+                    ShardContext.clear();
+                }
+            }
+        };
+        return new FilterRegistrationBean<>(filter);
+    }
+
+    private static void rejectWhileMigrating(HttpServletResponse response, String message) throws IOException {
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setHeader("Retry-After", "5");
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getWriter().write("{\"error\":\"" + message + "\"}");
+    }
+
+    // /api/public/notes/{shareId}[/...]; malformed ids stay on shard 0 and are rejected by NoteService
+    private static UUID publicShareId(String path) {
+        if (!path.startsWith(PUBLIC_NOTES_PREFIX)) {
+            return null;
+        }
+        int end = path.indexOf('/', PUBLIC_NOTES_PREFIX.length());
+        String id = end < 0 ? path.substring(PUBLIC_NOTES_PREFIX.length()) : path.substring(PUBLIC_NOTES_PREFIX.length(), end);
+        try {
+            return UUID.fromString(id);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
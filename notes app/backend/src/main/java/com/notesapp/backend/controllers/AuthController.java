@@ -3,10 +3,12 @@ package com.notesapp.backend.controllers;
 import com.notesapp.backend.dto.AuthRequest;
 import com.notesapp.backend.dto.RegisterRequest;
 import com.notesapp.backend.entities.User;
+import com.notesapp.backend.exceptions.PasswordHashingUnavailableException;
 import com.notesapp.backend.security.JwtService;
 import com.notesapp.backend.services.UserService;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -38,6 +40,8 @@ public class AuthController {
             Map<String, String> response = new HashMap<>();
             response.put("message", "User registered successfully");
             return ResponseEntity.status(HttpStatus.CREATED).body(response);
+        } catch (PasswordHashingUnavailableException e) {
+            return serviceBusy(e);
         } catch (RuntimeException e) {
             Map<String, String> error = new HashMap<>();
             error.put("error", e.getMessage());
@@ -61,10 +65,18 @@ public class AuthController {
             response.put("email", user.getEmail());
 
             return ResponseEntity.ok(response);
+        } catch (PasswordHashingUnavailableException e) {
+            return serviceBusy(e);
         } catch (Exception e) {
             Map<String, String> error = new HashMap<>();
             error.put("error", "Invalid credentials");
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(error);
         }
     }
+
+    private ResponseEntity<?> serviceBusy(PasswordHashingUnavailableException e) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", e.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").body(error);
+    }
 }
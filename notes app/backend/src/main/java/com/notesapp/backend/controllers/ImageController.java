@@ -1,7 +1,10 @@
 package com.notesapp.backend.controllers;
 
+import com.notesapp.backend.config.ShardContext;
+import com.notesapp.backend.config.ShardRegistry;
 import com.notesapp.backend.entities.NoteImage;
 import com.notesapp.backend.repositories.NoteImageRepository;
+import com.notesapp.backend.services.LegacyImageMigrator;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
@@ -9,6 +12,8 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.net.URI;
+
 @RestController
 @RequestMapping("/api/images")
 @CrossOrigin(origins = "*")
@@ -17,11 +22,29 @@ public class ImageController {
     @Autowired
     private NoteImageRepository noteImageRepository;
 
+    @Autowired
+    private LegacyImageMigrator legacyImageMigrator;
+
+    @Autowired
+    private ShardRegistry shardRegistry;
+
+    // Image links carry no credentials, so the shard comes from the id range
     @GetMapping("/{imageId}")
     public ResponseEntity<byte[]> getImage(@PathVariable Long imageId) {
+        int shard = ShardRegistry.shardOfId(imageId);
+        if (shard >= shardRegistry.getShardCount()) {
+            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        }
         try {
-            NoteImage noteImage = noteImageRepository.findById(imageId)
-                    .orElseThrow(() -> new RuntimeException("Image not found"));
+            NoteImage noteImage = ShardContext.callOn(shard, () -> noteImageRepository.findById(imageId)).orElse(null);
+            if (noteImage == null) {
+                // Moved to Cloudinary by LegacyImageMigrator
+                String url = ShardContext.callOn(shard, () -> legacyImageMigrator.findMigratedUrl(imageId));
+                if (url == null) {
+                    return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+                }
+                return ResponseEntity.status(HttpStatus.MOVED_PERMANENTLY).location(URI.create(url)).build();
+            }
 
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.parseMediaType(noteImage.getImageType()));
@@ -1,17 +1,35 @@
 package com.notesapp.backend.controllers;
 
+import com.notesapp.backend.config.ShardContext;
+import com.notesapp.backend.dto.NotePatchRequest;
 import com.notesapp.backend.entities.Note;
 import com.notesapp.backend.entities.ShareLink;
 import com.notesapp.backend.entities.User;
 import com.notesapp.backend.enums.AccessLevel;
+import com.notesapp.backend.exceptions.AutosaveLostException;
+import com.notesapp.backend.exceptions.BlobStoreUnavailableException;
+import com.notesapp.backend.exceptions.VersionConflictException;
+import com.notesapp.backend.services.AutosaveBuffer;
+import com.notesapp.backend.services.ChunkedUploadService;
+import com.notesapp.backend.services.IdempotencyService;
+import com.notesapp.backend.services.NoteEventHub;
 import com.notesapp.backend.services.NoteService;
+import com.notesapp.backend.services.NoteTransferService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -24,9 +42,25 @@ public class NotesController {
     @Autowired
     private NoteService noteService;
 
+    @Autowired
+    private NoteTransferService noteTransferService;
+
+    @Autowired
+    private NoteEventHub noteEventHub;
+
+    @Autowired
+    private AutosaveBuffer autosaveBuffer;
+
+    @Autowired
+    private ChunkedUploadService chunkedUploadService;
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
     @GetMapping("/notes")
     public ResponseEntity<List<Note>> getUserNotes(Authentication authentication) {
         User user = (User) authentication.getPrincipal();
+        autosaveBuffer.flushUser(user.getId());
         List<Note> notes = noteService.getUserNotes(user);
         return ResponseEntity.ok(notes);
     }
@@ -36,12 +70,19 @@ public class NotesController {
             @RequestParam("title") String title,
             @RequestParam("content") String content,
             @RequestParam(value = "images", required = false) MultipartFile[] images,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
+            HttpServletRequest request,
             Authentication authentication
     ) {
         try {
             User user = (User) authentication.getPrincipal();
-            Note note = noteService.createNote(title, content, images, user);
-            return ResponseEntity.status(HttpStatus.CREATED).body(note);
+            String fingerprint = idempotencyKey != null ? IdempotencyService.fingerprint(request) : null;
+            return idempotencyService.execute(user, idempotencyKey, fingerprint, () -> {
+                Note note = noteService.createNote(title, content, images, user);
+                return ResponseEntity.status(HttpStatus.CREATED).body(note);
+            });
+        } catch (BlobStoreUnavailableException e) {
+            return blobStoreUnavailable(e);
         } catch (Exception e) {
             Map<String, String> error = new HashMap<>();
             error.put("error", e.getMessage());
@@ -53,12 +94,58 @@ public class NotesController {
     public ResponseEntity<?> updateNote(
             @PathVariable Long id,
             @RequestBody Map<String, String> request,
+            @RequestParam(value = "autosave", defaultValue = "false") boolean autosave,
             Authentication authentication
     ) {
         try {
             User user = (User) authentication.getPrincipal();
-            Note note = noteService.updateNote(id, request.get("title"), request.get("content"), user);
+            Long version = parseVersion(request.get("version"));
+            
+            // Versioned saves need the stored version, so only unversioned autosaves are buffered
+            if (autosave && version == null && autosaveBuffer.isEnabled()) {
+                autosaveBuffer.buffer(id, request.get("title"), request.get("content"), user);
+                
+                Map<String, Object> response = new HashMap<>();
+                response.put("id", id);
+                response.put("title", request.get("title"));
+                response.put("content", request.get("content"));
+                response.put("buffered", true);
+                return ResponseEntity.accepted().body(response);
+            }
+            
+            autosaveBuffer.flushNote(id, user.getId());
+            Note note = noteService.updateNote(id, request.get("title"), request.get("content"), version, user);
             return ResponseEntity.ok(note);
+        } catch (AutosaveLostException e) {
+            return autosaveLost(e);
+        } catch (VersionConflictException e) {
+            return versionConflict(e.getMessage(), e.getCurrentVersion());
+        } catch (ObjectOptimisticLockingFailureException e) {
+            return versionConflict("Note has been modified by someone else", null);
+        } catch (RuntimeException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        }
+    }
+
+    @PatchMapping("/notes/{id}")
+    public ResponseEntity<?> patchNote(
+            @PathVariable Long id,
+            @Valid @RequestBody NotePatchRequest request,
+            Authentication authentication
+    ) {
+        try {
+            User user = (User) authentication.getPrincipal();
+            autosaveBuffer.flushNote(id, user.getId());
+            Note note = noteService.patchNote(id, request, user);
+            return ResponseEntity.ok(patchResponse(note));
+        } catch (AutosaveLostException e) {
+            return autosaveLost(e);
+        } catch (VersionConflictException e) {
+            return versionConflict(e.getMessage(), e.getCurrentVersion());
+        } catch (ObjectOptimisticLockingFailureException e) {
+            return versionConflict("Note has been modified by someone else", null);
         } catch (RuntimeException e) {
             Map<String, String> error = new HashMap<>();
             error.put("error", e.getMessage());
@@ -71,6 +158,7 @@ public class NotesController {
         try {
             User user = (User) authentication.getPrincipal();
             noteService.deleteNote(id, user);
+            autosaveBuffer.discardNote(id);
             return ResponseEntity.noContent().build();
         } catch (RuntimeException e) {
             Map<String, String> error = new HashMap<>();
@@ -78,11 +166,112 @@ public class NotesController {
             return ResponseEntity.badRequest().body(error);
         }
     }
-    
+
+    @PostMapping("/notes/batch")
+    public ResponseEntity<?> createNotes(
+            @RequestBody List<Map<String, String>> request,
+            Authentication authentication
+    ) {
+        try {
+            User user = (User) authentication.getPrincipal();
+            List<Note> notes = noteService.createNotes(request, user);
+            return ResponseEntity.status(HttpStatus.CREATED).body(notes);
+        } catch (RuntimeException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        }
+    }
+
+    @PutMapping("/notes/batch")
+    public ResponseEntity<?> updateNotes(
+            @RequestBody List<Map<String, Object>> request,
+            Authentication authentication
+    ) {
+        try {
+            User user = (User) authentication.getPrincipal();
+            autosaveBuffer.flushUser(user.getId());
+            List<Note> notes = noteService.updateNotes(request, user);
+            return ResponseEntity.ok(notes);
+        } catch (RuntimeException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        }
+    }
+
+    @DeleteMapping("/notes/batch")
+    public ResponseEntity<?> deleteNotes(
+            @RequestBody Map<String, List<Number>> request,
+            Authentication authentication
+    ) {
+        try {
+            User user = (User) authentication.getPrincipal();
+            // Small ids can arrive as Integer despite a List<Long> parameter, so they are widened here
+            List<Long> ids = request.get("ids") != null
+                    ? request.get("ids").stream().map(Number::longValue).toList()
+                    : null;
+            noteService.deleteNotes(ids, user);
+            ids.forEach(autosaveBuffer::discardNote);
+            return ResponseEntity.noContent().build();
+        } catch (RuntimeException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        }
+    }
+
+    @GetMapping("/notes/export")
+    public ResponseEntity<StreamingResponseBody> exportNotes(
+            @RequestParam(value = "format", defaultValue = "ndjson") String format,
+            Authentication authentication
+    ) {
+        User user = (User) authentication.getPrincipal();
+        // Flushed before the body is built, so a lost autosave is reported by handleAutosaveLost instead of the export
+        autosaveBuffer.flushUser(user.getId());
+        
+        if ("zip".equalsIgnoreCase(format)) {
+            StreamingResponseBody body = onCurrentShard(out -> noteTransferService.exportZip(user, out));
+            return ResponseEntity.ok()
+                    .contentType(MediaType.parseMediaType("application/zip"))
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"notes-export.zip\"")
+                    .body(body);
+        }
+        
+        StreamingResponseBody body = onCurrentShard(out -> noteTransferService.exportNdjson(user, out));
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"notes-export.ndjson\"")
+                .body(body);
+    }
+
+    @PostMapping("/notes/import")
+    public ResponseEntity<?> importNotes(HttpServletRequest request, Authentication authentication) {
+        try {
+            User user = (User) authentication.getPrincipal();
+            String contentType = request.getContentType();
+            int imported = contentType != null && contentType.startsWith("application/zip")
+                    ? noteTransferService.importZip(request.getInputStream(), user)
+                    : noteTransferService.importNdjson(request.getInputStream(), user);
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("imported", imported);
+            response.put("message", "Notes imported successfully");
+            return ResponseEntity.ok(response);
+        } catch (IOException | RuntimeException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        }
+    }
+
     @PostMapping("/notes/{noteId}/images")
     public ResponseEntity<?> addImagesToNote(
             @PathVariable Long noteId,
             @RequestParam("images") MultipartFile[] images,
+            @RequestParam(value = "version", required = false) Long version,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
+            HttpServletRequest request,
             Authentication authentication
     ) {
         System.out.println("[NotesController] POST /notes/" + noteId + "/images - Adding images to note");
@@ -91,15 +280,25 @@ public class NotesController {
             User user = (User) authentication.getPrincipal();
             System.out.println("[NotesController] User: " + user.getEmail() + ", Note ID: " + noteId);
             
-            Note note = noteService.addImagesToNote(noteId, images, user);
-            
-            Map<String, Object> response = new HashMap<>();
-            response.put("id", note.getId());
-            response.put("imageUrls", note.getImageUrls());
-            response.put("message", "Images added successfully");
-            
-            System.out.println("[NotesController] Images added successfully. New count: " + note.getImageUrls().size());
-            return ResponseEntity.ok(response);
+            String fingerprint = idempotencyKey != null ? IdempotencyService.fingerprint(request) : null;
+            return idempotencyService.execute(user, idempotencyKey, fingerprint, () -> {
+                autosaveBuffer.flushNote(noteId, user.getId());
+                Note note = noteService.addImagesToNote(noteId, images, version, user);
+                
+                Map<String, Object> response = new HashMap<>();
+                response.put("id", note.getId());
+                response.put("imageUrls", note.getImageUrls());
+                response.put("message", "Images added successfully");
+                
+                System.out.println("[NotesController] Images added successfully. New count: " + note.getImageUrls().size());
+                return ResponseEntity.ok(response);
+            });
+        } catch (VersionConflictException e) {
+            return versionConflict(e.getMessage(), e.getCurrentVersion());
+        } catch (ObjectOptimisticLockingFailureException e) {
+            return versionConflict("Note has been modified by someone else", null);
+        } catch (BlobStoreUnavailableException e) {
+            return blobStoreUnavailable(e);
         } catch (RuntimeException e) {
             System.err.println("[NotesController] Error adding images to note " + noteId + ": " + e.getMessage());
             e.printStackTrace();
@@ -115,6 +314,163 @@ public class NotesController {
         }
     }
     
+    // Direct uploads: the client posts the file to uploadUrl with these parameters, then confirms the result
+    @PostMapping("/notes/{noteId}/images/upload-params")
+    public ResponseEntity<?> signImageUpload(@PathVariable Long noteId, Authentication authentication) {
+        try {
+            User user = (User) authentication.getPrincipal();
+            return ResponseEntity.ok(noteService.signImageUpload(noteId, user));
+        } catch (RuntimeException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        }
+    }
+
+    // Body: public_id, version and signature exactly as returned by Cloudinary's upload response
+    @PostMapping("/notes/{noteId}/images/confirm")
+    public ResponseEntity<?> confirmImageUpload(
+            @PathVariable Long noteId,
+            @RequestBody Map<String, Object> request,
+            @RequestParam(value = "version", required = false) Long version,
+            Authentication authentication
+    ) {
+        try {
+            User user = (User) authentication.getPrincipal();
+            
+            autosaveBuffer.flushNote(noteId, user.getId());
+            Note note = noteService.confirmImageUpload(noteId,
+                    request.get("public_id") != null ? request.get("public_id").toString() : null,
+                    request.get("version") != null ? request.get("version").toString() : null,
+                    request.get("signature") != null ? request.get("signature").toString() : null,
+                    version, user);
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("id", note.getId());
+            response.put("version", note.getVersion());
+            response.put("imageUrls", note.getImageUrls());
+            response.put("message", "Image added successfully");
+            return ResponseEntity.ok(response);
+        } catch (VersionConflictException e) {
+            return versionConflict(e.getMessage(), e.getCurrentVersion());
+        } catch (ObjectOptimisticLockingFailureException e) {
+            return versionConflict("Note has been modified by someone else", null);
+        } catch (RuntimeException e) {
+            System.err.println("[NotesController] Error confirming upload for note " + noteId + ": " + e.getMessage());
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        }
+    }
+    
+    // Resumable uploads: start a session with the total size, PUT each chunk with ?offset=, then complete
+    @PostMapping("/notes/{noteId}/images/uploads")
+    public ResponseEntity<?> createImageUpload(
+            @PathVariable Long noteId,
+            @RequestBody Map<String, Object> request,
+            Authentication authentication
+    ) {
+        try {
+            User user = (User) authentication.getPrincipal();
+            long size = request.get("size") instanceof Number number ? number.longValue() : -1;
+            return ResponseEntity.ok(chunkedUploadService.createSession(noteId, size, user));
+        } catch (RuntimeException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        }
+    }
+
+    // Lets a client that lost track of its progress find out which chunks still have to be sent
+    @GetMapping("/notes/{noteId}/images/uploads/{uploadId}")
+    public ResponseEntity<?> getImageUpload(
+            @PathVariable Long noteId,
+            @PathVariable String uploadId,
+            Authentication authentication
+    ) {
+        try {
+            User user = (User) authentication.getPrincipal();
+            return ResponseEntity.ok(chunkedUploadService.getStatus(noteId, uploadId, user));
+        } catch (RuntimeException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error);
+        }
+    }
+
+    // Raw chunk bytes as the request body (application/octet-stream)
+    @PutMapping("/notes/{noteId}/images/uploads/{uploadId}")
+    public ResponseEntity<?> writeImageUploadChunk(
+            @PathVariable Long noteId,
+            @PathVariable String uploadId,
+            @RequestParam("offset") long offset,
+            HttpServletRequest request,
+            Authentication authentication
+    ) {
+        try {
+            User user = (User) authentication.getPrincipal();
+            return ResponseEntity.ok(chunkedUploadService.writeChunk(noteId, uploadId, offset, request.getInputStream(), user));
+        } catch (IOException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Could not read chunk: " + e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        } catch (RuntimeException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        }
+    }
+
+    @PostMapping("/notes/{noteId}/images/uploads/{uploadId}/complete")
+    public ResponseEntity<?> completeImageUpload(
+            @PathVariable Long noteId,
+            @PathVariable String uploadId,
+            @RequestParam(value = "version", required = false) Long version,
+            Authentication authentication
+    ) {
+        try {
+            User user = (User) authentication.getPrincipal();
+            
+            autosaveBuffer.flushNote(noteId, user.getId());
+            Note note = chunkedUploadService.finalizeUpload(noteId, uploadId, version, user);
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("id", note.getId());
+            response.put("version", note.getVersion());
+            response.put("imageUrls", note.getImageUrls());
+            response.put("message", "Image added successfully");
+            return ResponseEntity.ok(response);
+        } catch (VersionConflictException e) {
+            return versionConflict(e.getMessage(), e.getCurrentVersion());
+        } catch (ObjectOptimisticLockingFailureException e) {
+            return versionConflict("Note has been modified by someone else", null);
+        } catch (BlobStoreUnavailableException e) {
+            return blobStoreUnavailable(e);
+        } catch (RuntimeException e) {
+            System.err.println("[NotesController] Error completing upload " + uploadId + " for note " + noteId + ": " + e.getMessage());
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        }
+    }
+
+    @DeleteMapping("/notes/{noteId}/images/uploads/{uploadId}")
+    public ResponseEntity<?> abortImageUpload(
+            @PathVariable Long noteId,
+            @PathVariable String uploadId,
+            Authentication authentication
+    ) {
+        try {
+            User user = (User) authentication.getPrincipal();
+            chunkedUploadService.abort(noteId, uploadId, user);
+            return ResponseEntity.noContent().build();
+        } catch (RuntimeException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        }
+    }
+    
     @DeleteMapping("/notes/{noteId}/images")
     public ResponseEntity<?> deleteImageFromNote(
             @PathVariable Long noteId,
@@ -137,6 +493,8 @@ public class NotesController {
             
             System.out.println("[NotesController] Image deleted successfully. Remaining count: " + note.getImageUrls().size());
             return ResponseEntity.ok(response);
+        } catch (ObjectOptimisticLockingFailureException e) {
+            return versionConflict("Note has been modified by someone else", null);
         } catch (RuntimeException e) {
             System.err.println("[NotesController] Error deleting image from note " + noteId + ": " + e.getMessage());
             e.printStackTrace();
@@ -152,6 +510,49 @@ public class NotesController {
         }
     }
 
+    @GetMapping(value = "/notes/{noteId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> subscribeToNote(@PathVariable Long noteId, Authentication authentication) {
+        try {
+            User user = (User) authentication.getPrincipal();
+            noteService.checkNoteOwner(noteId, user);
+            return ResponseEntity.ok(noteEventHub.subscribe(noteId));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+    }
+
+    @GetMapping("/notes/{noteId}/revisions")
+    public ResponseEntity<?> getNoteRevisions(@PathVariable Long noteId, Authentication authentication) {
+        try {
+            User user = (User) authentication.getPrincipal();
+            autosaveBuffer.flushNote(noteId, user.getId());
+            return ResponseEntity.ok(noteService.getNoteRevisions(noteId, user));
+        } catch (RuntimeException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        }
+    }
+
+    @GetMapping("/notes/{noteId}/revisions/{revision}")
+    public ResponseEntity<?> getNoteRevision(
+            @PathVariable Long noteId,
+            @PathVariable int revision,
+            Authentication authentication
+    ) {
+        try {
+            User user = (User) authentication.getPrincipal();
+            autosaveBuffer.flushNote(noteId, user.getId());
+            return ResponseEntity.ok(noteService.getNoteRevision(noteId, revision, user));
+        } catch (RuntimeException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        }
+    }
+
     @PostMapping("/notes/{noteId}/share")
     public ResponseEntity<?> createShareLink(
             @PathVariable Long noteId,
@@ -161,12 +562,16 @@ public class NotesController {
         try {
             User user = (User) authentication.getPrincipal();
             AccessLevel accessLevel = AccessLevel.valueOf(request.get("accessLevel"));
-            ShareLink shareLink = noteService.createShareLink(noteId, accessLevel, user);
+            Long ttlSeconds = request.get("ttlSeconds") != null ? Long.valueOf(request.get("ttlSeconds")) : null;
+            Integer maxViews = request.get("maxViews") != null ? Integer.valueOf(request.get("maxViews")) : null;
+            ShareLink shareLink = noteService.createShareLink(noteId, accessLevel, ttlSeconds, maxViews, user);
             
-            Map<String, String> response = new HashMap<>();
+            Map<String, Object> response = new HashMap<>();
             response.put("shareableLink", "/view/note/" + shareLink.getShareId());
             response.put("accessLevel", shareLink.getAccessLevel().toString());
-            response.put("shareId", shareLink.getShareId());
+            response.put("shareId", shareLink.getShareId().toString());
+            response.put("expiresAt", shareLink.getExpiresAt());
+            response.put("maxViews", shareLink.getMaxViews());
             
             return ResponseEntity.ok(response);
         } catch (Exception e) {
@@ -211,8 +616,10 @@ public class NotesController {
     @GetMapping("/public/notes/{shareId}")
     public ResponseEntity<?> getSharedNote(@PathVariable String shareId) {
         try {
-            Note note = noteService.getSharedNote(shareId);
-            AccessLevel accessLevel = noteService.getShareAccessLevel(shareId);
+            autosaveBuffer.flushSharedNote(shareId);
+            ShareLink shareLink = noteService.getSharedNoteLink(shareId);
+            noteService.recordSharedView(shareLink);
+            Note note = shareLink.getNote();
             
             Map<String, Object> response = new HashMap<>();
             response.put("id", note.getId());
@@ -220,7 +627,8 @@ public class NotesController {
             response.put("content", note.getContent());
             response.put("createdAt", note.getCreatedAt());
             response.put("imageUrls", note.getImageUrls());
-            response.put("accessLevel", accessLevel.toString());
+            response.put("version", note.getVersion());
+            response.put("accessLevel", shareLink.getAccessLevel().toString());
             
             return ResponseEntity.ok(response);
         } catch (RuntimeException e) {
@@ -230,21 +638,62 @@ public class NotesController {
         }
     }
 
+    @GetMapping(value = "/public/notes/{shareId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> subscribeToSharedNote(@PathVariable String shareId) {
+        try {
+            ShareLink shareLink = noteService.getSharedLink(shareId);
+            // A stream delivers the content just like a page view, so it uses up one of a capped link's views.
+            // The stream opened with the last view is closed by the next expiry sweep.
+            noteService.recordSharedView(shareLink);
+            return ResponseEntity.ok(noteEventHub.subscribeShared(shareLink.getNote().getId(), shareLink.getShareId()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        } catch (RuntimeException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+    }
+
     @PutMapping("/public/notes/{shareId}")
     public ResponseEntity<?> updateSharedNote(
             @PathVariable String shareId,
             @RequestBody Map<String, String> request
     ) {
         try {
-            Note note = noteService.updateSharedNote(shareId, request.get("title"), request.get("content"));
+            autosaveBuffer.flushSharedNote(shareId);
+            Note note = noteService.updateSharedNote(shareId, request.get("title"), request.get("content"), parseVersion(request.get("version")));
             
             Map<String, Object> response = new HashMap<>();
             response.put("id", note.getId());
             response.put("title", note.getTitle());
             response.put("content", note.getContent());
+            response.put("version", note.getVersion());
             response.put("updatedAt", note.getUpdatedAt());
             
             return ResponseEntity.ok(response);
+        } catch (VersionConflictException e) {
+            return versionConflict(e.getMessage(), e.getCurrentVersion());
+        } catch (ObjectOptimisticLockingFailureException e) {
+            return versionConflict("Note has been modified by someone else", null);
+        } catch (RuntimeException e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(error);
+        }
+    }
+    
+    @PatchMapping("/public/notes/{shareId}")
+    public ResponseEntity<?> patchSharedNote(
+            @PathVariable String shareId,
+            @Valid @RequestBody NotePatchRequest request
+    ) {
+        try {
+            autosaveBuffer.flushSharedNote(shareId);
+            Note note = noteService.patchSharedNote(shareId, request);
+            return ResponseEntity.ok(patchResponse(note));
+        } catch (VersionConflictException e) {
+            return versionConflict(e.getMessage(), e.getCurrentVersion());
+        } catch (ObjectOptimisticLockingFailureException e) {
+            return versionConflict("Note has been modified by someone else", null);
         } catch (RuntimeException e) {
             Map<String, String> error = new HashMap<>();
             error.put("error", e.getMessage());
@@ -255,17 +704,24 @@ public class NotesController {
     @PostMapping("/public/notes/{shareId}/images")
     public ResponseEntity<?> addImagesToSharedNote(
             @PathVariable String shareId,
-            @RequestParam("images") MultipartFile[] images
+            @RequestParam("images") MultipartFile[] images,
+            @RequestParam(value = "version", required = false) Long version
     ) {
         try {
-            Note note = noteService.addImagesToSharedNote(shareId, images);
+            autosaveBuffer.flushSharedNote(shareId);
+            Note note = noteService.addImagesToSharedNote(shareId, images, version);
             
             Map<String, Object> response = new HashMap<>();
             response.put("id", note.getId());
             response.put("imageUrls", note.getImageUrls());
+            response.put("version", note.getVersion());
             response.put("message", "Images added successfully");
             
             return ResponseEntity.ok(response);
+        } catch (VersionConflictException e) {
+            return versionConflict(e.getMessage(), e.getCurrentVersion());
+        } catch (ObjectOptimisticLockingFailureException e) {
+            return versionConflict("Note has been modified by someone else", null);
         } catch (RuntimeException e) {
             Map<String, String> error = new HashMap<>();
             error.put("error", e.getMessage());
@@ -279,6 +735,7 @@ public class NotesController {
             @RequestBody Map<String, String> request
     ) {
         try {
+            autosaveBuffer.flushSharedNote(shareId);
             String imageUrl = request.get("imageUrl");
             Note note = noteService.deleteImageFromSharedNote(shareId, imageUrl);
             
@@ -288,10 +745,72 @@ public class NotesController {
             response.put("message", "Image deleted successfully");
             
             return ResponseEntity.ok(response);
+        } catch (ObjectOptimisticLockingFailureException e) {
+            return versionConflict("Note has been modified by someone else", null);
         } catch (RuntimeException e) {
             Map<String, String> error = new HashMap<>();
             error.put("error", e.getMessage());
             return ResponseEntity.badRequest().body(error);
         }
     }
+
+    // Patch responses omit content; the client already holds the text it just edited
+    private Map<String, Object> patchResponse(Note note) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("id", note.getId());
+        response.put("title", note.getTitle());
+        response.put("version", note.getVersion());
+        response.put("updatedAt", note.getUpdatedAt());
+        return response;
+    }
+
+    // Streaming bodies are written on an async thread, which does not inherit the request's shard
+    private StreamingResponseBody onCurrentShard(StreamingResponseBody body) {
+        int shard = ShardContext.current();
+        return out -> {
+            ShardContext.set(shard);
+            try {
+                body.writeTo(out);
+            } finally {
+                ShardContext.clear();
+            }
+        };
+    }
+
+    private Long parseVersion(String version) {
+        if (version == null || version.isBlank()) {
+            return null;
+        }
+        try {
+            return Long.valueOf(version);
+        } catch (NumberFormatException e) {
+            throw new RuntimeException("Invalid version");
+        }
+    }
+
+    private ResponseEntity<?> blobStoreUnavailable(BlobStoreUnavailableException e) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", e.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "5").body(error);
+    }
+
+    // Routes without their own try/catch (note list, export) return typed bodies, so the 409 is produced here
+    @ExceptionHandler(AutosaveLostException.class)
+    public ResponseEntity<?> handleAutosaveLost(AutosaveLostException e) {
+        return autosaveLost(e);
+    }
+
+    private ResponseEntity<?> autosaveLost(AutosaveLostException e) {
+        Map<String, Object> error = new HashMap<>();
+        error.put("error", e.getMessage());
+        error.put("noteId", e.getNoteId());
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(error);
+    }
+
+    private ResponseEntity<?> versionConflict(String message, Long currentVersion) {
+        Map<String, Object> error = new HashMap<>();
+        error.put("error", message);
+        error.put("currentVersion", currentVersion);
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(error);
+    }
 }
@@ -0,0 +1,80 @@
+package com.notesapp.backend.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class NotePatchRequest {
+    @NotNull(message = "Base version is required")
+    private Long baseVersion;
+
+    @Size(max = 255, message = "Title cannot exceed 255 characters")
+    private String title; // Optional; null keeps the current title
+
+    @Valid
+    private List<ContentEdit> edits = new ArrayList<>();
+
+    // Replaces `length` characters at `offset` of the base content with `text`.
+    // Offsets are UTF-16 code units (JavaScript string indices) and refer to the base version.
+    public static class ContentEdit {
+        @Min(value = 0, message = "Offset cannot be negative")
+        private int offset;
+
+        @Min(value = 0, message = "Length cannot be negative")
+        private int length;
+
+        private String text;
+
+        public int getOffset() {
+            return offset;
+        }
+
+        public void setOffset(int offset) {
+            this.offset = offset;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        public void setLength(int length) {
+            this.length = length;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public void setText(String text) {
+            this.text = text;
+        }
+    }
+
+    public Long getBaseVersion() {
+        return baseVersion;
+    }
+
+    public void setBaseVersion(Long baseVersion) {
+        this.baseVersion = baseVersion;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public List<ContentEdit> getEdits() {
+        return edits;
+    }
+
+    public void setEdits(List<ContentEdit> edits) {
+        this.edits = edits;
+    }
+}
@@ -19,7 +19,8 @@ import java.util.List;
 })
 public class Note {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "notes_seq")
+    @SequenceGenerator(name = "notes_seq", sequenceName = "notes_seq", allocationSize = 50) // Pooled ids keep insert batching enabled
     private Long id;
 
     @NotBlank(message = "Title is required")
@@ -29,10 +30,22 @@ public class Note {
 
     @Column(columnDefinition = "TEXT")
     private String content;
-    
+
+    @Column(name = "content_deflated")
+    @JsonIgnore
+    private byte[] contentDeflated; // Set instead of content when NoteContentCodec compresses it
+
+    @Transient
+    @JsonIgnore
+    private String inflatedContent; // Decompressed on first read only
+
     @Column(name = "image_urls", columnDefinition = "TEXT")
     private String imageUrls; // Store comma-separated Cloudinary URLs
 
+    @Version
+    @Column(nullable = false, columnDefinition = "bigint default 0")
+    private long version;
+
     @CreationTimestamp
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
@@ -41,8 +54,9 @@ public class Note {
     @Column(name = "updated_at")
     private LocalDateTime updatedAt;
 
+    // users stay on shard 0 while this row may live on another shard, so no database-level foreign key
     @ManyToOne(fetch = FetchType.LAZY)
-    @JoinColumn(name = "user_id", nullable = false)
+    @JoinColumn(name = "user_id", nullable = false, foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT))
     @JsonIgnore
     private User user;
 
@@ -58,8 +72,8 @@ public class Note {
 
     public Note(String title, String content, User user) {
         this.title = title;
-        this.content = content;
         this.user = user;
+        setContent(content);
     }
 
     // Utility methods
@@ -96,11 +110,49 @@ public class Note {
     }
 
     public String getContent() {
-        return content;
+        if (contentDeflated == null) {
+            return content;
+        }
+        if (inflatedContent == null) {
+            inflatedContent = NoteContentCodec.inflate(contentDeflated);
+        }
+        return inflatedContent;
     }
 
     public void setContent(String content) {
-        this.content = content;
+        byte[] deflated = NoteContentCodec.deflateIfLarge(content);
+        this.contentDeflated = deflated;
+        this.content = deflated == null ? content : null;
+        this.inflatedContent = deflated == null ? null : content;
+    }
+
+    @JsonIgnore
+    public boolean isContentCompressed() {
+        return contentDeflated != null;
+    }
+
+    // Column values as they would be written, for statements that update a note without loading it
+    @JsonIgnore
+    public String getStoredContent() {
+        return content;
+    }
+
+    @JsonIgnore
+    public byte[] getStoredContentDeflated() {
+        return contentDeflated;
+    }
+
+    @JsonIgnore
+    public int getStoredContentSize() {
+        return contentDeflated != null ? contentDeflated.length : (content != null ? content.length() : 0);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
     }
 
     public LocalDateTime getCreatedAt() {
@@ -0,0 +1,77 @@
+package com.notesapp.backend.entities;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Deflate codec for large note content. Settings are applied once at startup by ContentCompressionConfig;
+// entities cannot take injected beans, hence the static state.
+public final class NoteContentCodec {
+
+    private static volatile boolean enabled = false;
+    private static volatile int thresholdChars = 16 * 1024;
+    private static volatile int level = Deflater.BEST_SPEED;
+
+    private NoteContentCodec() {}
+
+    public static void configure(boolean enabled, int thresholdChars, int level) {
+        NoteContentCodec.enabled = enabled;
+        NoteContentCodec.thresholdChars = thresholdChars;
+        NoteContentCodec.level = level;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static int getThresholdChars() {
+        return thresholdChars;
+    }
+
+    // Returns null when compression is off, the content is small, or deflating does not save enough to be worth it
+    public static byte[] deflateIfLarge(String content) {
+        if (!enabled || content == null || content.length() < thresholdChars) {
+            return null;
+        }
+
+        byte[] raw = content.getBytes(StandardCharsets.UTF_8);
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 4);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int written = deflater.deflate(buffer);
+                out.write(buffer, 0, written);
+            }
+            byte[] deflated = out.toByteArray();
+            return deflated.length < raw.length * 0.9 ? deflated : null;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    public static String inflate(byte[] deflated) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(deflated);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(deflated.length * 4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int read = inflater.inflate(buffer);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalStateException("Truncated compressed note content");
+                }
+                out.write(buffer, 0, read);
+            }
+            return out.toString(StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt compressed note content", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.notesapp.backend.entities;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+// One saved state of a note. Snapshots hold the full content; other revisions hold a single
+// edit (offset, length, inserted text) against the previous revision.
+@Entity
+@Table(name = "note_revisions", indexes = {
+    @Index(name = "idx_note_revision_note", columnList = "note_id, revision", unique = true)
+})
+public class NoteRevision {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "note_id", nullable = false)
+    private Long noteId;
+
+    @Column(nullable = false)
+    private int revision;
+
+    @Column(nullable = false)
+    private boolean snapshot;
+
+    @Column(name = "edit_offset")
+    private Integer editOffset;
+
+    @Column(name = "edit_length")
+    private Integer editLength;
+
+    @Column(columnDefinition = "TEXT")
+    private String text; // Full content for snapshots, inserted text otherwise
+
+    @Column(nullable = false)
+    private String title;
+
+    @Column(name = "edited_by", length = 50)
+    private String editedBy;
+
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    // Constructors
+    public NoteRevision() {}
+
+    public static NoteRevision snapshot(Long noteId, int revision, String title, String content, String editedBy) {
+        NoteRevision noteRevision = new NoteRevision();
+        noteRevision.noteId = noteId;
+        noteRevision.revision = revision;
+        noteRevision.snapshot = true;
+        noteRevision.title = title;
+        noteRevision.text = content;
+        noteRevision.editedBy = editedBy;
+        return noteRevision;
+    }
+
+    public static NoteRevision edit(Long noteId, int revision, String title, int offset, int length, String text, String editedBy) {
+        NoteRevision noteRevision = new NoteRevision();
+        noteRevision.noteId = noteId;
+        noteRevision.revision = revision;
+        noteRevision.snapshot = false;
+        noteRevision.title = title;
+        noteRevision.editOffset = offset;
+        noteRevision.editLength = length;
+        noteRevision.text = text;
+        noteRevision.editedBy = editedBy;
+        return noteRevision;
+    }
+
+    // Getters and Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getNoteId() {
+        return noteId;
+    }
+
+    public void setNoteId(Long noteId) {
+        this.noteId = noteId;
+    }
+
+    public int getRevision() {
+        return revision;
+    }
+
+    public void setRevision(int revision) {
+        this.revision = revision;
+    }
+
+    public boolean isSnapshot() {
+        return snapshot;
+    }
+
+    public void setSnapshot(boolean snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    public Integer getEditOffset() {
+        return editOffset;
+    }
+
+    public void setEditOffset(Integer editOffset) {
+        this.editOffset = editOffset;
+    }
+
+    public Integer getEditLength() {
+        return editLength;
+    }
+
+    public void setEditLength(Integer editLength) {
+        this.editLength = editLength;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public void setText(String text) {
+        this.text = text;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public String getEditedBy() {
+        return editedBy;
+    }
+
+    public void setEditedBy(String editedBy) {
+        this.editedBy = editedBy;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
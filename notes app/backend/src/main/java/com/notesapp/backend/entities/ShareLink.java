@@ -3,7 +3,10 @@ package com.notesapp.backend.entities;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.notesapp.backend.enums.AccessLevel;
 import jakarta.persistence.*;
-import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
 
 @Entity
 @Table(name = "share_links", indexes = {
@@ -15,14 +18,30 @@ public class ShareLink {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @NotBlank(message = "Share ID is required")
-    @Column(name = "share_id", nullable = false, unique = true)
-    private String shareId;
+    // Native 16-byte uuid column; SchemaMigrations converts rows created while it was VARCHAR
+    @NotNull(message = "Share ID is required")
+    @Column(name = "share_id", nullable = false, unique = true, columnDefinition = "uuid")
+    private UUID shareId;
 
     @Enumerated(EnumType.STRING)
     @Column(name = "access_level", nullable = false)
     private AccessLevel accessLevel;
 
+    // Optional limits; ShareLinkExpiry removes the row once either one is reached
+    @Column(name = "expires_at")
+    private LocalDateTime expiresAt;
+
+    @Column(name = "max_views")
+    private Integer maxViews;
+
+    @Column(name = "view_count", nullable = false, columnDefinition = "bigint default 0")
+    private long viewCount;
+
+    // Views counted in memory but not yet written by ShareViewCounter
+    @Transient
+    @JsonIgnore
+    private long unflushedViews;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "note_id", nullable = false)
     @JsonIgnore
@@ -31,7 +50,7 @@ public class ShareLink {
     // Constructors
     public ShareLink() {}
 
-    public ShareLink(String shareId, AccessLevel accessLevel, Note note) {
+    public ShareLink(UUID shareId, AccessLevel accessLevel, Note note) {
         this.shareId = shareId;
         this.accessLevel = accessLevel;
         this.note = note;
@@ -46,11 +65,11 @@ public class ShareLink {
         this.id = id;
     }
 
-    public String getShareId() {
+    public UUID getShareId() {
         return shareId;
     }
 
-    public void setShareId(String shareId) {
+    public void setShareId(UUID shareId) {
         this.shareId = shareId;
     }
 
@@ -62,6 +81,40 @@ public class ShareLink {
         this.accessLevel = accessLevel;
     }
 
+    public LocalDateTime getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(LocalDateTime expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    public Integer getMaxViews() {
+        return maxViews;
+    }
+
+    public void setMaxViews(Integer maxViews) {
+        this.maxViews = maxViews;
+    }
+
+    public long getViewCount() {
+        return viewCount + unflushedViews;
+    }
+
+    public void setViewCount(long viewCount) {
+        this.viewCount = viewCount;
+    }
+
+    public void setUnflushedViews(long unflushedViews) {
+        this.unflushedViews = unflushedViews;
+    }
+
+    @JsonIgnore
+    public boolean isExpired() {
+        return (expiresAt != null && !expiresAt.isAfter(LocalDateTime.now()))
+                || (maxViews != null && viewCount >= maxViews);
+    }
+
     public Note getNote() {
         return note;
     }
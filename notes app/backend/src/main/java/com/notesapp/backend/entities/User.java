@@ -38,6 +38,14 @@ public class User implements UserDetails {
     @Column(nullable = false)
     private String roles = "ROLE_USER";
 
+    // Database holding this user's notes, feedback and share links (see ShardRegistry)
+    @Column(nullable = false, columnDefinition = "integer default 0")
+    private int shard;
+
+    // Set by the resharding tool while the user's rows are copied to another shard
+    @Column(nullable = false, columnDefinition = "boolean default false")
+    private boolean migrating;
+
     @OneToMany(mappedBy = "user", cascade = CascadeType.ALL, orphanRemoval = true)
     private List<Note> notes = new ArrayList<>();
 
@@ -125,6 +133,22 @@ public class User implements UserDetails {
         this.roles = roles;
     }
 
+    public int getShard() {
+        return shard;
+    }
+
+    public void setShard(int shard) {
+        this.shard = shard;
+    }
+
+    public boolean isMigrating() {
+        return migrating;
+    }
+
+    public void setMigrating(boolean migrating) {
+        this.migrating = migrating;
+    }
+
     public List<Note> getNotes() {
         return notes;
     }
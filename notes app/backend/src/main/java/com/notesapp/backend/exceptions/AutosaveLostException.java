@@ -0,0 +1,16 @@
+package com.notesapp.backend.exceptions;
+
+// Thrown once on the next read or write of a note whose buffered autosave could not be written; controllers map it to 409
+public class AutosaveLostException extends RuntimeException {
+
+    private final Long noteId;
+
+    public AutosaveLostException(Long noteId, String reason) {
+        super("Autosaved changes to note " + noteId + " could not be saved: " + reason);
+        this.noteId = noteId;
+    }
+
+    public Long getNoteId() {
+        return noteId;
+    }
+}
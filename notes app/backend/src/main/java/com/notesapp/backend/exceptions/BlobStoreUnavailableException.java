@@ -0,0 +1,9 @@
+package com.notesapp.backend.exceptions;
+
+// Thrown when Cloudinary calls are short-circuited or the call limit is reached; controllers map it to 503
+public class BlobStoreUnavailableException extends RuntimeException {
+
+    public BlobStoreUnavailableException() {
+        super("Image storage is temporarily unavailable, please try again shortly");
+    }
+}
@@ -0,0 +1,9 @@
+package com.notesapp.backend.exceptions;
+
+// Thrown when the password hashing pool is saturated; controllers map it to 503 instead of queueing the request
+public class PasswordHashingUnavailableException extends RuntimeException {
+
+    public PasswordHashingUnavailableException() {
+        super("Server is busy, please try again shortly");
+    }
+}
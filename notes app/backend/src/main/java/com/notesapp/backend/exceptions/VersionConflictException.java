@@ -0,0 +1,16 @@
+package com.notesapp.backend.exceptions;
+
+// Thrown when a write is based on a note version that is no longer current; controllers map it to 409
+public class VersionConflictException extends RuntimeException {
+
+    private final Long currentVersion;
+
+    public VersionConflictException(Long currentVersion) {
+        super("Note has been modified by someone else");
+        this.currentVersion = currentVersion;
+    }
+
+    public Long getCurrentVersion() {
+        return currentVersion;
+    }
+}
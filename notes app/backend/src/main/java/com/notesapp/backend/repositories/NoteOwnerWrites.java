@@ -0,0 +1,43 @@
+package com.notesapp.backend.repositories;
+
+import com.notesapp.backend.enums.AccessLevel;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+// Writes that carry the owner check in their WHERE clause, so a note is changed in one statement without being
+// loaded first. Empty results mean no row matched; findOwnership then tells "not found" from "denied".
+public interface NoteOwnerWrites {
+
+    record Ownership(long userId, long version, String imageUrls) {}
+
+    record UpdatedContent(String oldTitle, String oldContent, byte[] oldContentDeflated, long version,
+                          LocalDateTime createdAt, LocalDateTime updatedAt, String imageUrls) {}
+
+    record UpdatedImages(long version, String imageUrls) {}
+
+    record DeletedNote(long noteId, String imageUrls, List<UUID> shareIds) {}
+
+    Optional<Ownership> findOwnership(Long noteId);
+
+    // Skipped when expectedVersion is given and no longer current
+    Optional<UpdatedContent> updateOwnedContent(Long noteId, Long userId, Long expectedVersion, String title,
+                                                String content, byte[] contentDeflated, LocalDateTime updatedAt);
+
+    Optional<UpdatedImages> appendOwnedImageUrls(Long noteId, Long userId, String imageUrls, LocalDateTime updatedAt);
+
+    // Skipped when the note does not list the image
+    Optional<UpdatedImages> removeOwnedImageUrl(Long noteId, Long userId, String imageUrl, LocalDateTime updatedAt);
+
+    // Removes the note with its share links, legacy images and revisions
+    Optional<DeletedNote> deleteOwned(Long noteId, Long userId);
+
+    // Same as deleteOwned for a batch; ids that are missing or not owned are left out of the result
+    List<DeletedNote> deleteOwnedNotes(Collection<Long> noteIds, Long userId);
+
+    Optional<Long> insertOwnedShareLink(Long noteId, Long userId, UUID shareId, AccessLevel accessLevel,
+                                        LocalDateTime expiresAt, Integer maxViews);
+}
@@ -0,0 +1,120 @@
+package com.notesapp.backend.repositories;
+
+import com.notesapp.backend.enums.AccessLevel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+// Plain JDBC so each operation is exactly one statement. These run in the caller's transaction but bypass the
+// persistence context, so callers must not hold a managed copy of the same note.
+public class NoteOwnerWritesImpl implements NoteOwnerWrites {
+
+    private static final String UPDATE_CONTENT =
+            "WITH old AS (SELECT id, title, content, content_deflated FROM notes " +
+            "WHERE id = ? AND user_id = ? AND (CAST(? AS bigint) IS NULL OR version = ?) FOR UPDATE) " +
+            "UPDATE notes n SET title = ?, content = ?, content_deflated = ?, version = n.version + 1, updated_at = ? " +
+            "FROM old WHERE n.id = old.id " +
+            "RETURNING old.title, old.content, old.content_deflated, n.version, n.created_at, n.updated_at, n.image_urls";
+
+    private static final String APPEND_IMAGE_URLS =
+            "UPDATE notes SET image_urls = CASE WHEN image_urls IS NULL OR btrim(image_urls) = '' THEN ? " +
+            "ELSE image_urls || ',' || ? END, version = version + 1, updated_at = ? " +
+            "WHERE id = ? AND user_id = ? RETURNING version, image_urls";
+
+    private static final String REMOVE_IMAGE_URL =
+            "UPDATE notes SET image_urls = NULLIF(array_to_string(array_remove(string_to_array(image_urls, ','), ?), ','), ''), " +
+            "version = version + 1, updated_at = ? " +
+            "WHERE id = ? AND user_id = ? AND ? = ANY(string_to_array(image_urls, ',')) RETURNING version, image_urls";
+
+    // Children go in the same statement; foreign keys are checked once it completes. Legacy image blobs are
+    // large objects, so their rows are unlinked as they are deleted rather than leaked.
+    private static final String DELETE_NOTES =
+            "WITH owned AS (DELETE FROM notes WHERE id = ANY(?) AND user_id = ? RETURNING id, image_urls), " +
+            "links AS (DELETE FROM share_links WHERE note_id IN (SELECT id FROM owned) RETURNING note_id, share_id), " +
+            "images AS (DELETE FROM note_images WHERE note_id IN (SELECT id FROM owned) RETURNING image_data), " +
+            "revisions AS (DELETE FROM note_revisions WHERE note_id IN (SELECT id FROM owned)) " +
+            "SELECT o.id, o.image_urls, ARRAY(SELECT l.share_id FROM links l WHERE l.note_id = o.id), " +
+            "(SELECT count(lo_unlink(image_data)) FROM images) " +
+            "FROM owned o";
+
+    private static final String INSERT_SHARE_LINK =
+            "INSERT INTO share_links (share_id, access_level, expires_at, max_views, view_count, note_id) " +
+            "SELECT ?, ?, ?, ?, 0, id FROM notes WHERE id = ? AND user_id = ? RETURNING id";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Override
+    public Optional<Ownership> findOwnership(Long noteId) {
+        return jdbcTemplate.query("SELECT user_id, version, image_urls FROM notes WHERE id = ?",
+                (rs, row) -> new Ownership(rs.getLong(1), rs.getLong(2), rs.getString(3)), noteId).stream().findFirst();
+    }
+
+    @Override
+    public Optional<UpdatedContent> updateOwnedContent(Long noteId, Long userId, Long expectedVersion, String title,
+                                                       String content, byte[] contentDeflated, LocalDateTime updatedAt) {
+        return jdbcTemplate.query(UPDATE_CONTENT, statement -> {
+            statement.setLong(1, noteId);
+            statement.setLong(2, userId);
+            statement.setObject(3, expectedVersion, Types.BIGINT);
+            statement.setObject(4, expectedVersion, Types.BIGINT);
+            statement.setString(5, title);
+            statement.setString(6, content);
+            statement.setBytes(7, contentDeflated);
+            statement.setObject(8, updatedAt);
+        }, (rs, row) -> new UpdatedContent(rs.getString(1), rs.getString(2), rs.getBytes(3), rs.getLong(4),
+                rs.getObject(5, LocalDateTime.class), rs.getObject(6, LocalDateTime.class), rs.getString(7)))
+                .stream().findFirst();
+    }
+
+    @Override
+    public Optional<UpdatedImages> appendOwnedImageUrls(Long noteId, Long userId, String imageUrls, LocalDateTime updatedAt) {
+        return jdbcTemplate.query(APPEND_IMAGE_URLS, (rs, row) -> new UpdatedImages(rs.getLong(1), rs.getString(2)),
+                imageUrls, imageUrls, updatedAt, noteId, userId).stream().findFirst();
+    }
+
+    @Override
+    public Optional<UpdatedImages> removeOwnedImageUrl(Long noteId, Long userId, String imageUrl, LocalDateTime updatedAt) {
+        return jdbcTemplate.query(REMOVE_IMAGE_URL, (rs, row) -> new UpdatedImages(rs.getLong(1), rs.getString(2)),
+                imageUrl, updatedAt, noteId, userId, imageUrl).stream().findFirst();
+    }
+
+    @Override
+    public Optional<DeletedNote> deleteOwned(Long noteId, Long userId) {
+        return deleteOwnedNotes(List.of(noteId), userId).stream().findFirst();
+    }
+
+    @Override
+    public List<DeletedNote> deleteOwnedNotes(Collection<Long> noteIds, Long userId) {
+        return jdbcTemplate.query(DELETE_NOTES, statement -> {
+            statement.setArray(1, statement.getConnection().createArrayOf("bigint", noteIds.toArray()));
+            statement.setLong(2, userId);
+        }, (rs, row) -> {
+            List<UUID> shareIds = new ArrayList<>();
+            for (Object shareId : (Object[]) rs.getArray(3).getArray()) {
+                shareIds.add((UUID) shareId);
+            }
+            return new DeletedNote(rs.getLong(1), rs.getString(2), shareIds);
+        });
+    }
+
+    @Override
+    public Optional<Long> insertOwnedShareLink(Long noteId, Long userId, UUID shareId, AccessLevel accessLevel,
+                                               LocalDateTime expiresAt, Integer maxViews) {
+        return jdbcTemplate.query(INSERT_SHARE_LINK, statement -> {
+            statement.setObject(1, shareId);
+            statement.setString(2, accessLevel.name());
+            statement.setObject(3, expiresAt, Types.TIMESTAMP);
+            statement.setObject(4, maxViews, Types.INTEGER);
+            statement.setLong(5, noteId);
+            statement.setLong(6, userId);
+        }, (rs, row) -> rs.getLong(1)).stream().findFirst();
+    }
+}
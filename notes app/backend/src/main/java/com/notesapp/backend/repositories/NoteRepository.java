@@ -2,15 +2,21 @@ package com.notesapp.backend.repositories;
 
 import com.notesapp.backend.entities.Note;
 import com.notesapp.backend.entities.User;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
-public interface NoteRepository extends JpaRepository<Note, Long> {
+public interface NoteRepository extends JpaRepository<Note, Long>, NoteOwnerWrites {
     List<Note> findByUserOrderByCreatedAtDesc(User user);
     
     @Query("SELECT n FROM Note n LEFT JOIN FETCH n.images WHERE n.user = :user ORDER BY n.createdAt DESC")
@@ -18,4 +24,30 @@ public interface NoteRepository extends JpaRepository<Note, Long> {
     
     @Query("SELECT n FROM Note n LEFT JOIN FETCH n.images WHERE n.id = :id")
     Note findByIdWithImages(@Param("id") Long id);
+    
+    @Query("SELECT DISTINCT n FROM Note n LEFT JOIN FETCH n.images WHERE n.id IN :ids")
+    List<Note> findAllByIdWithImages(@Param("ids") Collection<Long> ids);
+    
+    // Cursor-backed streams for export; must be consumed inside a transaction
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "200"))
+    @Query("SELECT n FROM Note n WHERE n.user = :user ORDER BY n.id")
+    Stream<Note> streamByUser(@Param("user") User user);
+    
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("SELECT n.id, n.imageUrls FROM Note n WHERE n.user = :user AND n.imageUrls IS NOT NULL ORDER BY n.id")
+    Stream<Object[]> streamImageUrlsByUser(@Param("user") User user);
+    
+    // Uncompressed notes large enough to be re-encoded by ContentCompressionJob
+    @Query(value = "SELECT id FROM notes WHERE content_deflated IS NULL AND length(content) >= :threshold AND id > :afterId ORDER BY id LIMIT :limit", nativeQuery = true)
+    List<Long> findIdsToCompress(@Param("threshold") int threshold, @Param("afterId") long afterId, @Param("limit") int limit);
+    
+    // Row lock for entity writes, taken before the revision insert so they lock notes then note_revisions
+    // in the same order as updateOwnedContent; returns the version current under the lock
+    @Query(value = "SELECT version FROM notes WHERE id = :id FOR UPDATE", nativeQuery = true)
+    Optional<Long> lockVersion(@Param("id") Long id);
+    
+    // Batch form of lockVersion returning (id, user_id, version); rows are locked in id order so two batches
+    // over the same notes cannot deadlock
+    @Query(value = "SELECT id, user_id, version FROM notes WHERE id IN :ids ORDER BY id FOR UPDATE", nativeQuery = true)
+    List<Object[]> lockVersions(@Param("ids") Collection<Long> ids);
 }
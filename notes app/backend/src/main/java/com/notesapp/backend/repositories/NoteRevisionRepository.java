@@ -0,0 +1,38 @@
+package com.notesapp.backend.repositories;
+
+import com.notesapp.backend.entities.NoteRevision;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface NoteRevisionRepository extends JpaRepository<NoteRevision, Long> {
+    
+    @Query("SELECT MAX(r.revision) FROM NoteRevision r WHERE r.noteId = :noteId")
+    Integer findLatestRevision(@Param("noteId") Long noteId);
+    
+    // (noteId, latest revision) for the notes that have any
+    @Query("SELECT r.noteId, MAX(r.revision) FROM NoteRevision r WHERE r.noteId IN :noteIds GROUP BY r.noteId")
+    List<Object[]> findLatestRevisions(@Param("noteIds") Collection<Long> noteIds);
+    
+    // Metadata only; snapshot text is not loaded for listings
+    @Query("SELECT r.revision, r.title, r.snapshot, r.editedBy, r.createdAt FROM NoteRevision r WHERE r.noteId = :noteId ORDER BY r.revision DESC")
+    List<Object[]> findSummariesByNoteId(@Param("noteId") Long noteId);
+    
+    Optional<NoteRevision> findFirstByNoteIdAndSnapshotTrueAndRevisionLessThanEqualOrderByRevisionDesc(Long noteId, int revision);
+    
+    List<NoteRevision> findByNoteIdAndRevisionBetweenOrderByRevisionAsc(Long noteId, int fromRevision, int toRevision);
+    
+    @Query("SELECT r.noteId FROM NoteRevision r GROUP BY r.noteId HAVING COUNT(r) > :keep")
+    List<Long> findNoteIdsWithMoreRevisionsThan(@Param("keep") long keep);
+    
+    @Modifying
+    @Query("DELETE FROM NoteRevision r WHERE r.noteId = :noteId AND r.revision < :revision")
+    int deleteByNoteIdAndRevisionLessThan(@Param("noteId") Long noteId, @Param("revision") int revision);
+}
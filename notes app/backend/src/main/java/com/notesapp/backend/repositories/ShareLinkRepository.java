@@ -3,21 +3,37 @@ package com.notesapp.backend.repositories;
 import com.notesapp.backend.entities.Note;
 import com.notesapp.backend.entities.ShareLink;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
 
 @Repository
 public interface ShareLinkRepository extends JpaRepository<ShareLink, Long> {
-    Optional<ShareLink> findByShareId(String shareId);
+    Optional<ShareLink> findByShareId(UUID shareId);
     List<ShareLink> findByNote(Note note);
     
+    // Owner check in the same query, so listing links needs no note load
+    @Query("SELECT s FROM ShareLink s WHERE s.note.id = :noteId AND s.note.user.id = :userId")
+    List<ShareLink> findByNoteIdAndOwner(@Param("noteId") Long noteId, @Param("userId") Long userId);
+    
     @Query("SELECT s FROM ShareLink s JOIN FETCH s.note n LEFT JOIN FETCH n.images WHERE s.shareId = :shareId")
-    Optional<ShareLink> findByShareIdWithNoteAndImages(@Param("shareId") String shareId);
+    Optional<ShareLink> findByShareIdWithNoteAndImages(@Param("shareId") UUID shareId);
     
     @Query("SELECT s FROM ShareLink s JOIN FETCH s.note WHERE s.shareId = :shareId")
-    Optional<ShareLink> findByShareIdWithNote(@Param("shareId") String shareId);
+    Optional<ShareLink> findByShareIdWithNote(@Param("shareId") UUID shareId);
+    
+    @Modifying
+    @Query("DELETE FROM ShareLink s WHERE s.shareId IN :shareIds")
+    int deleteByShareIdIn(@Param("shareIds") Collection<UUID> shareIds);
+    
+    // Single conditional statement, so concurrent viewers can never exceed max_views between them
+    @Modifying
+    @Query("UPDATE ShareLink s SET s.viewCount = s.viewCount + 1 WHERE s.id = :id AND s.viewCount < s.maxViews")
+    int consumeView(@Param("id") Long id);
 }
@@ -0,0 +1,113 @@
+package com.notesapp.backend.security;
+
+import com.notesapp.backend.exceptions.PasswordHashingUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Runs BCrypt on a core-sized pool instead of Tomcat request threads, so a login or signup burst can use
+// at most every core rather than every worker. When the queue is full, or a hash waits longer than
+// maxWaitMillis, the request fails fast with PasswordHashingUnavailableException (503).
+public class BoundedPasswordEncoder implements PasswordEncoder {
+
+    private final BCryptPasswordEncoder delegate;
+    private final ThreadPoolExecutor executor;
+    private final long maxWaitMillis;
+    private final Timer encodeTimer;
+    private final Timer matchesTimer;
+    private final Counter rejectedCounter;
+
+    public BoundedPasswordEncoder(int strength, int threads, int queueCapacity, long maxWaitMillis, MeterRegistry meterRegistry) {
+        this.delegate = new BCryptPasswordEncoder(strength);
+        this.maxWaitMillis = maxWaitMillis;
+
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-hash-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        this.encodeTimer = Timer.builder("password.hash").tag("operation", "encode").register(meterRegistry);
+        this.matchesTimer = Timer.builder("password.hash").tag("operation", "matches").register(meterRegistry);
+        this.rejectedCounter = Counter.builder("password.hash.rejected").register(meterRegistry);
+        meterRegistry.gauge("password.hash.queue", executor, pool -> pool.getQueue().size());
+        meterRegistry.gauge("password.hash.active", executor, ThreadPoolExecutor::getActiveCount);
+        meterRegistry.gauge("password.hash.strength", strength);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return run(() -> encodeTimer.record(() -> delegate.encode(rawPassword)));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return run(() -> matchesTimer.record(() -> delegate.matches(rawPassword, encodedPassword)));
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private <T> T run(Callable<T> hashing) {
+        Future<T> future;
+        try {
+            future = executor.submit(hashing);
+        } catch (RejectedExecutionException e) {
+            rejectedCounter.increment();
+            throw new PasswordHashingUnavailableException();
+        }
+
+        try {
+            return future.get(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            rejectedCounter.increment();
+            throw new PasswordHashingUnavailableException();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new PasswordHashingUnavailableException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    // Highest cost whose single-thread hash time stays within the target on this machine.
+    // Existing hashes keep verifying at their own cost, which is stored in the hash itself.
+    public static int calibrateStrength(long targetMillis, int minStrength, int maxStrength) {
+        BCryptPasswordEncoder probe = new BCryptPasswordEncoder(minStrength);
+        probe.encode("calibration");
+        long start = System.nanoTime();
+        probe.encode("calibration");
+        double millis = (System.nanoTime() - start) / 1_000_000.0;
+
+        // Each step up doubles the work
+        int strength = minStrength;
+        while (strength < maxStrength && millis * 2 <= targetMillis) {
+            millis *= 2;
+            strength++;
+        }
+        System.out.println("[BoundedPasswordEncoder] BCrypt cost " + strength + " (~" + Math.round(millis) + " ms per hash, target " + targetMillis + " ms)");
+        return strength;
+    }
+}
@@ -0,0 +1,120 @@
+package com.notesapp.backend.security;
+
+import com.notesapp.backend.entities.User;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.lang.NonNull;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Runs after JwtAuthenticationFilter so authenticated requests are limited per user, while anonymous
+// access to /api/public/** is limited per client IP and per share link. Image uploads trigger paid
+// Cloudinary work and get a separate, much smaller allowance.
+@Component
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private static final String PUBLIC_NOTES_PREFIX = "/api/public/notes/";
+
+    private final RateLimiter rateLimiter;
+    private final boolean enabled;
+    private final RateLimiter.Limit ipLimit;
+    private final RateLimiter.Limit shareLimit;
+    private final RateLimiter.Limit userLimit;
+    private final RateLimiter.Limit uploadLimit;
+
+    public RateLimitFilter(
+            RateLimiter rateLimiter,
+            @Value("${notes.rate-limit.enabled:true}") boolean enabled,
+            @Value("${notes.rate-limit.ip.per-minute:300}") int ipPerMinute,
+            @Value("${notes.rate-limit.ip.burst:60}") int ipBurst,
+            @Value("${notes.rate-limit.share.per-minute:600}") int sharePerMinute,
+            @Value("${notes.rate-limit.share.burst:120}") int shareBurst,
+            @Value("${notes.rate-limit.user.per-minute:1200}") int userPerMinute,
+            @Value("${notes.rate-limit.user.burst:200}") int userBurst,
+            @Value("${notes.rate-limit.upload.per-minute:20}") int uploadPerMinute,
+            @Value("${notes.rate-limit.upload.burst:5}") int uploadBurst
+    ) {
+        this.rateLimiter = rateLimiter;
+        this.enabled = enabled;
+        this.ipLimit = new RateLimiter.Limit(ipPerMinute, ipBurst);
+        this.shareLimit = new RateLimiter.Limit(sharePerMinute, shareBurst);
+        this.userLimit = new RateLimiter.Limit(userPerMinute, userBurst);
+        this.uploadLimit = new RateLimiter.Limit(uploadPerMinute, uploadBurst);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(@NonNull HttpServletRequest request) {
+        return !enabled || !request.getRequestURI().startsWith("/api/") || "OPTIONS".equals(request.getMethod());
+    }
+
+    @Override
+    protected void doFilterInternal(
+            @NonNull HttpServletRequest request,
+            @NonNull HttpServletResponse response,
+            @NonNull FilterChain filterChain
+    ) throws ServletException, IOException {
+
+        String uri = request.getRequestURI();
+        boolean upload = "POST".equals(request.getMethod()) && (uri.endsWith("/images")
+                || uri.endsWith("/images/upload-params") || uri.endsWith("/images/uploads"));
+        long waitNanos;
+
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof User user) {
+            String key = user.getId().toString();
+            waitNanos = rateLimiter.tryAcquire("user:" + key, userLimit);
+            if (waitNanos == 0 && upload) {
+                waitNanos = rateLimiter.tryAcquire("upload-user:" + key, uploadLimit);
+            }
+        } else {
+            String ip = request.getRemoteAddr();
+            waitNanos = rateLimiter.tryAcquire("ip:" + ip, ipLimit);
+            if (waitNanos == 0 && upload) {
+                waitNanos = rateLimiter.tryAcquire("upload-ip:" + ip, uploadLimit);
+            }
+        }
+
+        // A leaked share link is limited as a whole, however many addresses it is used from
+        String shareId = shareIdOf(uri);
+        if (waitNanos == 0 && shareId != null) {
+            waitNanos = rateLimiter.tryAcquire("share:" + shareId, shareLimit);
+            if (waitNanos == 0 && upload) {
+                waitNanos = rateLimiter.tryAcquire("upload-share:" + shareId, uploadLimit);
+            }
+        }
+
+        if (waitNanos > 0) {
+            reject(response, waitNanos);
+            return;
+        }
+        filterChain.doFilter(request, response);
+    }
+
+    private String shareIdOf(String uri) {
+        if (!uri.startsWith(PUBLIC_NOTES_PREFIX)) {
+            return null;
+        }
+        int end = uri.indexOf('/', PUBLIC_NOTES_PREFIX.length());
+        String shareId = end < 0 ? uri.substring(PUBLIC_NOTES_PREFIX.length()) : uri.substring(PUBLIC_NOTES_PREFIX.length(), end);
+        return shareId.isEmpty() ? null : shareId;
+    }
+
+    private void reject(HttpServletResponse response, long waitNanos) throws IOException {
+        long retryAfterSeconds = Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getWriter().write("{\"error\":\"Too many requests, please retry in " + retryAfterSeconds + " seconds\"}");
+    }
+}
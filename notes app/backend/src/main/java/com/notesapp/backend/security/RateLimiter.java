@@ -0,0 +1,56 @@
+package com.notesapp.backend.security;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Token buckets implemented as GCRA: each key stores only its theoretical arrival time, so a check is one
+// map lookup plus a CAS and refill needs no timer. A bucket whose arrival time has passed is full again and
+// indistinguishable from a new one, which is what makes evicting idle keys safe.
+@Component
+public class RateLimiter {
+
+    private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+
+    public static final class Limit {
+        private final long emissionIntervalNanos;
+        private final long burstToleranceNanos;
+
+        public Limit(int requestsPerMinute, int burst) {
+            this.emissionIntervalNanos = TimeUnit.MINUTES.toNanos(1) / Math.max(1, requestsPerMinute);
+            this.burstToleranceNanos = emissionIntervalNanos * Math.max(1, burst);
+        }
+    }
+
+    // Returns 0 when the request may proceed, otherwise the nanoseconds until a token is available
+    public long tryAcquire(String key, Limit limit) {
+        AtomicLong arrival = buckets.computeIfAbsent(key, k -> new AtomicLong(System.nanoTime()));
+        while (true) {
+            long now = System.nanoTime();
+            long current = arrival.get();
+            long base = current - now < 0 ? now : current;
+            long next = base + limit.emissionIntervalNanos;
+            long wait = next - now - limit.burstToleranceNanos;
+            if (wait > 0) {
+                return wait;
+            }
+            if (arrival.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    public int getTrackedKeyCount() {
+        return buckets.size();
+    }
+
+    @Scheduled(fixedDelayString = "${notes.rate-limit.eviction-interval-ms:60000}")
+    public void evictIdle() {
+        long now = System.nanoTime();
+        buckets.values().removeIf(arrival -> arrival.get() - now <= 0);
+    }
+}
@@ -0,0 +1,353 @@
+package com.notesapp.backend.services;
+
+import com.notesapp.backend.config.ShardContext;
+import com.notesapp.backend.entities.User;
+import com.notesapp.backend.exceptions.AutosaveLostException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+// Opt-in write-behind buffer for editor autosaves. Rapid updates to the same note replace each other
+// in memory and only the latest state is written, on a short interval or once too many notes are pending.
+// Entries are striped by note id. Flushes of a stripe are serialized by its flush lock so an older edit is never
+// written after a newer one, while the map lock is only held to take edits out, so autosaves never wait on the DB.
+// Notes are indexed by user, so a read-your-writes flush only waits on the stripes holding that user's or note's edits.
+@Service
+public class AutosaveBuffer {
+
+    private static final int STRIPES = 16;
+    // A note that keeps failing (deleted, ownership changed) is dropped after this many flushes
+    private static final int MAX_FLUSH_ATTEMPTS = 5;
+    // Share ids resolved to note ids; a link never moves to another note, so entries only go when links are deleted
+    private static final int MAX_SHARED_NOTE_IDS = 10_000;
+
+    @Autowired
+    private NoteService noteService;
+
+    @Autowired
+    private InvalidationBus invalidationBus;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${notes.autosave.write-behind.enabled:false}")
+    private boolean enabled;
+
+    @Value("${notes.autosave.write-behind.max-pending:500}")
+    private int maxPending;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    // Note ids each user has pending or being written; a user with no entry has nothing to flush
+    private final Map<Long, Set<Long>> notesByUser = new ConcurrentHashMap<>();
+    private final Map<String, Long> sharedNoteIds = new ConcurrentHashMap<>();
+    // Edits given up after MAX_FLUSH_ATTEMPTS, reported once to the owner on their next read or write of the note
+    private final Map<Long, LostEdit> lostEdits = new ConcurrentHashMap<>();
+    private final AtomicLong droppedEdits = new AtomicLong();
+    private final AtomicBoolean thresholdFlushQueued = new AtomicBoolean();
+    private final ExecutorService thresholdFlusher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "autosave-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public AutosaveBuffer() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    // A note deleted on another instance would only fail to flush
+    @PostConstruct
+    public void subscribe() {
+        invalidationBus.subscribe(InvalidationBus.NOTE_DELETED, noteId -> discardNote(Long.valueOf(noteId)));
+        invalidationBus.subscribe(InvalidationBus.SHARE_LINK, sharedNoteIds::remove);
+        invalidationBus.onReset(sharedNoteIds::clear);
+        FunctionCounter.builder("autosave.dropped", droppedEdits, AtomicLong::get)
+                .description("Buffered autosaves given up after repeated failed flushes")
+                .register(meterRegistry);
+        meterRegistry.gauge("autosave.pending", pendingCount);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void buffer(Long noteId, String title, String content, User user) {
+        if (title == null || title.isBlank()) {
+            throw new RuntimeException("Title is required");
+        }
+        // The editor is still saving, so this is where it learns that an earlier save never reached the DB
+        reportLost(noteId, user.getId());
+
+        Stripe stripe = stripeFor(noteId);
+        if (!stripe.isPendingFor(noteId, user)) {
+            // Ownership is verified once per flush window; coalesced saves after that skip the DB entirely
+            noteService.checkNoteOwner(noteId, user);
+        }
+
+        stripe.lock.lock();
+        try {
+            PendingEdit previous = stripe.pending.put(noteId, new PendingEdit(noteId, user, title, content, 0));
+            if (previous == null) {
+                pendingCount.incrementAndGet();
+            } else {
+                release(stripe, noteId, previous.user().getId());
+            }
+            index(user.getId(), noteId);
+        } finally {
+            stripe.lock.unlock();
+        }
+
+        if (pendingCount.get() >= maxPending && thresholdFlushQueued.compareAndSet(false, true)) {
+            thresholdFlusher.execute(() -> {
+                thresholdFlushQueued.set(false);
+                flushAll();
+            });
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${notes.autosave.write-behind.flush-interval-ms:2000}")
+    public void flushAll() {
+        if (pendingCount.get() > 0) {
+            for (Stripe stripe : stripes) {
+                flushStripe(stripe, edit -> true);
+            }
+        }
+    }
+
+    // Read-your-writes: called before a user's own reads so they never see an older state
+    public void flushUser(Long userId) {
+        Set<Long> noteIds = notesByUser.get(userId);
+        if (noteIds != null) {
+            Set<Stripe> held = new LinkedHashSet<>();
+            for (Long noteId : noteIds) {
+                held.add(stripeFor(noteId));
+            }
+            for (Stripe stripe : held) {
+                flushStripe(stripe, edit -> edit.user().getId().equals(userId));
+            }
+        }
+        for (Map.Entry<Long, LostEdit> lost : lostEdits.entrySet()) {
+            if (lost.getValue().userId().equals(userId)) {
+                reportLost(lost.getKey(), userId);
+            }
+        }
+    }
+
+    // Called before the owner's direct write to the note so the buffered state cannot overwrite it later
+    public void flushNote(Long noteId, Long userId) {
+        flushHeld(noteId);
+        reportLost(noteId, userId);
+    }
+
+    // Shared links name the note by share id; it is only resolved when something is buffered, and then once per link
+    public void flushSharedNote(String shareId) {
+        if (notesByUser.isEmpty()) {
+            return;
+        }
+        Long noteId = sharedNoteIds.get(shareId);
+        if (noteId == null) {
+            noteId = noteService.getSharedNoteId(shareId);
+            if (sharedNoteIds.size() >= MAX_SHARED_NOTE_IDS) {
+                sharedNoteIds.clear();
+            }
+            sharedNoteIds.put(shareId, noteId);
+        }
+        flushHeld(noteId);
+    }
+
+    public void discardNote(Long noteId) {
+        Stripe stripe = stripeFor(noteId);
+        stripe.lock.lock();
+        try {
+            PendingEdit edit = stripe.pending.remove(noteId);
+            if (edit != null) {
+                pendingCount.decrementAndGet();
+                release(stripe, noteId, edit.user().getId());
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+        lostEdits.remove(noteId);
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        thresholdFlusher.shutdown();
+        flushAll();
+    }
+
+    private void flushHeld(Long noteId) {
+        Stripe stripe = stripeFor(noteId);
+        if (stripe.holds(noteId)) {
+            flushStripe(stripe, edit -> edit.noteId().equals(noteId));
+        }
+    }
+
+    private void flushStripe(Stripe stripe, Predicate<PendingEdit> filter) {
+        stripe.flushLock.lock();
+        try {
+            List<PendingEdit> edits = stripe.take(filter);
+            pendingCount.addAndGet(-edits.size());
+
+            for (PendingEdit edit : edits) {
+                RuntimeException failure = null;
+                try {
+                    // Flushes may run on a scheduler thread, so route to the owner's shard explicitly
+                    ShardContext.runOn(edit.user().getShard(),
+                            () -> noteService.updateNote(edit.noteId(), edit.title(), edit.content(), null, edit.user()));
+                } catch (RuntimeException e) {
+                    failure = e;
+                } finally {
+                    finish(stripe, edit, failure);
+                }
+            }
+        } finally {
+            stripe.flushLock.unlock();
+        }
+    }
+
+    // An autosave that arrived during the flush is newer and wins over the failed edit, so it is neither retried
+    // nor reported as lost
+    private void finish(Stripe stripe, PendingEdit edit, RuntimeException failure) {
+        Long noteId = edit.noteId();
+        Long userId = edit.user().getId();
+        boolean retry = failure != null && edit.attempts() + 1 < MAX_FLUSH_ATTEMPTS;
+        if (failure != null) {
+            System.err.println("[AutosaveBuffer] Failed to flush note " + noteId
+                    + (retry ? ", will retry: " : " after " + MAX_FLUSH_ATTEMPTS + " attempts, dropping it: ")
+                    + failure.getMessage());
+        }
+
+        stripe.lock.lock();
+        try {
+            stripe.inFlight.remove(noteId);
+            boolean superseded = stripe.pending.containsKey(noteId);
+            if (retry && !superseded) {
+                stripe.pending.put(noteId, edit.retried());
+                pendingCount.incrementAndGet();
+            } else if (failure != null && !superseded) {
+                droppedEdits.incrementAndGet();
+                lostEdits.put(noteId, new LostEdit(userId, failure.getMessage()));
+            }
+            release(stripe, noteId, userId);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    private void reportLost(Long noteId, Long userId) {
+        LostEdit lost = lostEdits.get(noteId);
+        if (lost != null && lost.userId().equals(userId) && lostEdits.remove(noteId, lost)) {
+            throw new AutosaveLostException(noteId, lost.reason());
+        }
+    }
+
+    // Index updates run inside compute so a set emptied and removed by one stripe is never added to by another
+    private void index(Long userId, Long noteId) {
+        notesByUser.compute(userId, (id, noteIds) -> {
+            Set<Long> held = noteIds != null ? noteIds : ConcurrentHashMap.newKeySet();
+            held.add(noteId);
+            return held;
+        });
+    }
+
+    // Called with the stripe lock held
+    private void release(Stripe stripe, Long noteId, Long userId) {
+        if (!stripe.holdsFor(noteId, userId)) {
+            notesByUser.computeIfPresent(userId, (id, noteIds) -> {
+                noteIds.remove(noteId);
+                return noteIds.isEmpty() ? null : noteIds;
+            });
+        }
+    }
+
+    private Stripe stripeFor(Long noteId) {
+        return stripes[Math.floorMod(noteId.hashCode(), STRIPES)];
+    }
+
+    private record PendingEdit(Long noteId, User user, String title, String content, int attempts) {
+        PendingEdit retried() {
+            return new PendingEdit(noteId, user, title, content, attempts + 1);
+        }
+    }
+
+    private record LostEdit(Long userId, String reason) {
+    }
+
+    private static class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final ReentrantLock flushLock = new ReentrantLock();
+        private final Map<Long, PendingEdit> pending = new HashMap<>();
+        // Edits taken by the running flush and not yet written; a read of these notes must wait for it
+        private final Map<Long, PendingEdit> inFlight = new HashMap<>();
+
+        List<PendingEdit> take(Predicate<PendingEdit> filter) {
+            lock.lock();
+            try {
+                List<PendingEdit> edits = new ArrayList<>();
+                Iterator<PendingEdit> iterator = pending.values().iterator();
+                while (iterator.hasNext()) {
+                    PendingEdit edit = iterator.next();
+                    if (filter.test(edit)) {
+                        edits.add(edit);
+                        inFlight.put(edit.noteId(), edit);
+                        iterator.remove();
+                    }
+                }
+                return edits;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        boolean holds(Long noteId) {
+            lock.lock();
+            try {
+                return pending.containsKey(noteId) || inFlight.containsKey(noteId);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Called with the lock held
+        boolean holdsFor(Long noteId, Long userId) {
+            PendingEdit edit = pending.get(noteId);
+            PendingEdit writing = inFlight.get(noteId);
+            return (edit != null && edit.user().getId().equals(userId))
+                    || (writing != null && writing.user().getId().equals(userId));
+        }
+
+        boolean isPendingFor(Long noteId, User user) {
+            lock.lock();
+            try {
+                PendingEdit edit = pending.get(noteId);
+                return edit != null && edit.user().getId().equals(user.getId());
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.notesapp.backend.services;
+
+import com.notesapp.backend.exceptions.BlobStoreUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+// Every Cloudinary call goes through here. A semaphore caps concurrent calls so a slow store can hold at most
+// that many request threads, a circuit breaker fails calls fast while most recent calls failed, and idempotent
+// calls are retried with full-jitter backoff. Errors Cloudinary reports about the request itself (bad file,
+// unknown public id) are neither retried nor counted against the store.
+@Service
+public class BlobStoreGuard {
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    // Cloudinary surfaces HTTP errors as RuntimeException("Server returned unexpected status code - 503 - ...")
+    private static final Pattern TRANSIENT_STATUS = Pattern.compile("status code - (5\\d\\d|420|429)\\b");
+
+    private final Semaphore permits;
+    private final long maxWaitMillis;
+    private final int maxAttempts;
+    private final long backoffBaseMillis;
+    private final long backoffMaxMillis;
+    private final int windowSize;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long openMillis;
+
+    // Outcomes of the last windowSize calls, true for a failure
+    private final boolean[] window;
+    private int windowPosition;
+    private int windowCount;
+    private int windowFailures;
+    private State state = State.CLOSED;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private final Counter shortCircuited;
+    private final Counter bulkheadFull;
+
+    public BlobStoreGuard(MeterRegistry meterRegistry,
+                          @Value("${notes.blob-store.max-concurrent-calls:5}") int maxConcurrentCalls,
+                          @Value("${notes.blob-store.max-wait-ms:500}") long maxWaitMillis,
+                          @Value("${notes.blob-store.retry.max-attempts:3}") int maxAttempts,
+                          @Value("${notes.blob-store.retry.backoff-base-ms:200}") long backoffBaseMillis,
+                          @Value("${notes.blob-store.retry.backoff-max-ms:2000}") long backoffMaxMillis,
+                          @Value("${notes.blob-store.circuit.window-size:20}") int windowSize,
+                          @Value("${notes.blob-store.circuit.minimum-calls:10}") int minimumCalls,
+                          @Value("${notes.blob-store.circuit.failure-rate:0.5}") double failureRateThreshold,
+                          @Value("${notes.blob-store.circuit.open-ms:30000}") long openMillis) {
+        this.permits = new Semaphore(maxConcurrentCalls);
+        this.maxWaitMillis = maxWaitMillis;
+        this.maxAttempts = maxAttempts;
+        this.backoffBaseMillis = backoffBaseMillis;
+        this.backoffMaxMillis = backoffMaxMillis;
+        this.windowSize = windowSize;
+        this.minimumCalls = minimumCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.openMillis = openMillis;
+        this.window = new boolean[windowSize];
+
+        this.meterRegistry = meterRegistry;
+        this.shortCircuited = Counter.builder("blobstore.rejected").tag("reason", "circuit_open").register(meterRegistry);
+        this.bulkheadFull = Counter.builder("blobstore.rejected").tag("reason", "bulkhead_full").register(meterRegistry);
+        meterRegistry.gauge("blobstore.bulkhead.available", permits, Semaphore::availablePermits);
+        meterRegistry.gauge("blobstore.circuit.state", this, guard -> guard.getState().ordinal());
+    }
+
+    // Only pass idempotent = true when repeating the call cannot create a second object
+    public <T> T call(String operation, boolean idempotent, Callable<T> call) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            if (!tryEnter()) {
+                shortCircuited.increment();
+                throw new BlobStoreUnavailableException();
+            }
+            long start = System.nanoTime();
+            String outcome = "failure";
+            try {
+                T result = callWithPermit(call);
+                outcome = "success";
+                record(false);
+                return result;
+            } catch (IOException | RuntimeException e) {
+                if (e instanceof BlobStoreUnavailableException) {
+                    outcome = "bulkhead_full";
+                    release();
+                    throw e;
+                }
+                if (!isTransient(e)) {
+                    outcome = "client_error";
+                    record(false);
+                    throw e;
+                }
+                record(true);
+                if (!idempotent || attempt >= maxAttempts) {
+                    throw e;
+                }
+                System.err.println("[BlobStoreGuard] " + operation + " attempt " + attempt + " failed, retrying: " + e.getMessage());
+                Counter.builder("blobstore.retries").tag("operation", operation).register(meterRegistry).increment();
+            } catch (Exception e) {
+                record(true);
+                throw new IOException(e);
+            } finally {
+                timer(operation, outcome).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+            sleep(backoff(attempt));
+        }
+    }
+
+    private <T> T callWithPermit(Callable<T> call) throws Exception {
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BlobStoreUnavailableException();
+        }
+        if (!acquired) {
+            bulkheadFull.increment();
+            throw new BlobStoreUnavailableException();
+        }
+        try {
+            return call.call();
+        } finally {
+            permits.release();
+        }
+    }
+
+    // Full jitter: uniform between 0 and the exponential backoff for this attempt
+    private long backoff(int attempt) {
+        long ceiling = Math.min(backoffMaxMillis, backoffBaseMillis << Math.min(attempt - 1, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private static boolean isTransient(Exception e) {
+        if (e instanceof IOException) {
+            return true;
+        }
+        return e.getMessage() != null && TRANSIENT_STATUS.matcher(e.getMessage()).find();
+    }
+
+    // While open every call fails fast; after openMillis a single trial call decides whether to close again
+    private synchronized boolean tryEnter() {
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt < openMillis) {
+                return false;
+            }
+            transition(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialInFlight) {
+                return false;
+            }
+            trialInFlight = true;
+        }
+        return true;
+    }
+
+    // A call that never reached the store says nothing about its health
+    private synchronized void release() {
+        if (state == State.HALF_OPEN) {
+            trialInFlight = false;
+        }
+    }
+
+    private synchronized void record(boolean failure) {
+        if (state == State.HALF_OPEN) {
+            trialInFlight = false;
+            if (failure) {
+                open();
+            } else {
+                resetWindow();
+                transition(State.CLOSED);
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            return;
+        }
+
+        if (windowCount == windowSize && window[windowPosition]) {
+            windowFailures--;
+        }
+        window[windowPosition] = failure;
+        windowPosition = (windowPosition + 1) % windowSize;
+        windowCount = Math.min(windowCount + 1, windowSize);
+        if (failure) {
+            windowFailures++;
+        }
+
+        if (windowCount >= minimumCalls && windowFailures >= failureRateThreshold * windowCount) {
+            open();
+        }
+    }
+
+    private void open() {
+        openedAt = System.currentTimeMillis();
+        resetWindow();
+        transition(State.OPEN);
+    }
+
+    private void resetWindow() {
+        windowPosition = 0;
+        windowCount = 0;
+        windowFailures = 0;
+    }
+
+    private void transition(State next) {
+        if (state != next) {
+            System.out.println("[BlobStoreGuard] Circuit " + state + " -> " + next);
+            Counter.builder("blobstore.circuit.transitions").tag("to", next.name().toLowerCase()).register(meterRegistry).increment();
+            state = next;
+        }
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    private Timer timer(String operation, String outcome) {
+        return timers.computeIfAbsent(operation + ":" + outcome, key -> Timer.builder("blobstore.call")
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .register(meterRegistry));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BlobStoreUnavailableException();
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package com.notesapp.backend.services;
+
+import com.notesapp.backend.entities.Note;
+import com.notesapp.backend.entities.User;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+// Resumable image uploads: a session is created with the total size, the client PUTs fixed-size chunks at
+// their offsets (re-sending only what failed), then finalizes. Chunks are spooled to disk and the directory
+// is the whole session state, so sessions survive restarts; with several instances spool-dir must be a
+// shared volume or the proxy must route an upload id to one instance.
+@Service
+public class ChunkedUploadService {
+
+    private static final String SESSION_FILE = "session.properties";
+    private static final String CHUNK_SUFFIX = ".chunk";
+    private static final String ASSEMBLING_SUFFIX = ".assembling";
+
+    @Autowired
+    private NoteService noteService;
+
+    @Value("${notes.chunked-upload.spool-dir:${java.io.tmpdir}/notes-uploads}")
+    private String spoolDirectory;
+
+    @Value("${notes.chunked-upload.chunk-bytes:1048576}")
+    private int chunkBytes;
+
+    @Value("${notes.chunked-upload.max-bytes:10485760}")
+    private long maxBytes;
+
+    @Value("${notes.chunked-upload.session-ttl-ms:86400000}")
+    private long sessionTtlMillis;
+
+    private Path spool;
+
+    @PostConstruct
+    public void init() throws IOException {
+        spool = Paths.get(spoolDirectory);
+        Files.createDirectories(spool);
+    }
+
+    public Map<String, Object> createSession(Long noteId, long size, User user) {
+        if (size <= 0 || size > maxBytes) {
+            throw new RuntimeException("Upload size must be between 1 and " + maxBytes + " bytes");
+        }
+        noteService.checkNoteOwner(noteId, user);
+
+        String uploadId = UUID.randomUUID().toString();
+        Properties session = new Properties();
+        session.setProperty("userId", user.getId().toString());
+        session.setProperty("noteId", noteId.toString());
+        session.setProperty("size", Long.toString(size));
+        session.setProperty("chunkSize", Integer.toString(chunkBytes));
+
+        try {
+            Path directory = Files.createDirectory(spool.resolve(uploadId));
+            try (Writer writer = Files.newBufferedWriter(directory.resolve(SESSION_FILE))) {
+                session.store(writer, null);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not start upload: " + e.getMessage());
+        }
+        return status(uploadId, session, List.of());
+    }
+
+    public Map<String, Object> getStatus(Long noteId, String uploadId, User user) {
+        Path directory = sessionDirectory(uploadId);
+        Properties session = loadSession(directory, noteId, user);
+        return status(uploadId, session, receivedChunks(directory));
+    }
+
+    // Chunk n covers [n * chunkSize, (n + 1) * chunkSize); re-sending a chunk simply replaces it
+    public Map<String, Object> writeChunk(Long noteId, String uploadId, long offset, InputStream body, User user) {
+        Path directory = sessionDirectory(uploadId);
+        Properties session = loadSession(directory, noteId, user);
+        long size = Long.parseLong(session.getProperty("size"));
+        int chunkSize = Integer.parseInt(session.getProperty("chunkSize"));
+
+        if (offset < 0 || offset >= size || offset % chunkSize != 0) {
+            throw new RuntimeException("Offset must be a multiple of " + chunkSize + " below " + size);
+        }
+        long expected = Math.min(chunkSize, size - offset);
+        long index = offset / chunkSize;
+
+        // Written aside and moved into place, so a dropped connection never leaves a partial chunk behind
+        Path partial = directory.resolve(index + "." + UUID.randomUUID() + ".tmp");
+        try {
+            long written;
+            try (FileChannel out = FileChannel.open(partial, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                written = out.transferFrom(Channels.newChannel(body), 0, expected + 1);
+            }
+            if (written != expected) {
+                throw new RuntimeException("Chunk at offset " + offset + " must be " + expected + " bytes, got " + written);
+            }
+            move(partial, directory.resolve(index + CHUNK_SUFFIX));
+        } catch (IOException e) {
+            throw new RuntimeException("Could not store chunk: " + e.getMessage());
+        } finally {
+            try {
+                Files.deleteIfExists(partial);
+            } catch (IOException ignored) {
+            }
+        }
+        return status(uploadId, session, receivedChunks(directory));
+    }
+
+    // The session is claimed by renaming its directory, so concurrent finalize calls cannot both upload.
+    // If Cloudinary or the note update fails the chunks are put back and the client can retry.
+    public Note finalizeUpload(Long noteId, String uploadId, Long expectedVersion, User user) {
+        Path directory = sessionDirectory(uploadId);
+        Properties session = loadSession(directory, noteId, user);
+        long size = Long.parseLong(session.getProperty("size"));
+        int chunkSize = Integer.parseInt(session.getProperty("chunkSize"));
+        int chunkCount = (int) ((size + chunkSize - 1) / chunkSize);
+        if (receivedChunks(directory).size() != chunkCount) {
+            throw new RuntimeException("Upload is incomplete");
+        }
+
+        Path claimed = spool.resolve(uploadId + ASSEMBLING_SUFFIX);
+        try {
+            move(directory, claimed);
+        } catch (IOException e) {
+            throw new RuntimeException("Upload not found");
+        }
+
+        boolean attached = false;
+        try {
+            Path assembled = assemble(claimed, chunkCount, size);
+            Note note = noteService.addUploadedImageToNote(noteId, assembled, expectedVersion, user);
+            attached = true;
+            return note;
+        } finally {
+            try {
+                if (attached) {
+                    deleteRecursively(claimed);
+                } else {
+                    Files.deleteIfExists(claimed.resolve("assembled"));
+                    move(claimed, directory);
+                }
+            } catch (IOException e) {
+                System.err.println("[ChunkedUploadService] Could not clean up upload " + uploadId + ": " + e.getMessage());
+            }
+        }
+    }
+
+    public void abort(Long noteId, String uploadId, User user) {
+        Path directory = sessionDirectory(uploadId);
+        loadSession(directory, noteId, user);
+        try {
+            deleteRecursively(directory);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not remove upload: " + e.getMessage());
+        }
+    }
+
+    // Every chunk write touches the session directory, so its modification time is the last activity
+    @Scheduled(fixedDelayString = "${notes.chunked-upload.cleanup-interval-ms:600000}", initialDelay = 60000)
+    public void removeAbandonedSessions() {
+        long cutoff = System.currentTimeMillis() - sessionTtlMillis;
+        int removed = 0;
+        try (DirectoryStream<Path> directories = Files.newDirectoryStream(spool)) {
+            for (Path directory : directories) {
+                try {
+                    if (Files.getLastModifiedTime(directory).toMillis() < cutoff) {
+                        deleteRecursively(directory);
+                        removed++;
+                    }
+                } catch (IOException e) {
+                    System.err.println("[ChunkedUploadService] Could not remove " + directory + ": " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("[ChunkedUploadService] Could not scan " + spool + ": " + e.getMessage());
+        }
+        if (removed > 0) {
+            System.out.println("[ChunkedUploadService] Removed " + removed + " abandoned upload sessions");
+        }
+    }
+
+    private Path assemble(Path directory, int chunkCount, long size) {
+        Path assembled = directory.resolve("assembled");
+        try (FileChannel out = FileChannel.open(assembled, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (int index = 0; index < chunkCount; index++) {
+                try (FileChannel in = FileChannel.open(directory.resolve(index + CHUNK_SUFFIX), StandardOpenOption.READ)) {
+                    long position = 0, length = in.size();
+                    // transferTo may stop short of the requested count
+                    while (position < length) {
+                        position += in.transferTo(position, length - position, out);
+                    }
+                }
+            }
+            if (out.size() != size) {
+                throw new RuntimeException("Assembled upload is " + out.size() + " bytes, expected " + size);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not assemble upload: " + e.getMessage());
+        }
+        return assembled;
+    }
+
+    private Path sessionDirectory(String uploadId) {
+        try {
+            // Only ever resolve canonical UUIDs against the spool directory
+            return spool.resolve(UUID.fromString(uploadId).toString());
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("Upload not found");
+        }
+    }
+
+    private Properties loadSession(Path directory, Long noteId, User user) {
+        Properties session = new Properties();
+        try (Reader reader = Files.newBufferedReader(directory.resolve(SESSION_FILE))) {
+            session.load(reader);
+        } catch (IOException e) {
+            throw new RuntimeException("Upload not found");
+        }
+        if (!user.getId().toString().equals(session.getProperty("userId"))
+                || !noteId.toString().equals(session.getProperty("noteId"))) {
+            throw new RuntimeException("Upload not found");
+        }
+        return session;
+    }
+
+    private List<Long> receivedChunks(Path directory) {
+        List<Long> indexes = new ArrayList<>();
+        try (DirectoryStream<Path> chunks = Files.newDirectoryStream(directory, "*" + CHUNK_SUFFIX)) {
+            for (Path chunk : chunks) {
+                String name = chunk.getFileName().toString();
+                indexes.add(Long.parseLong(name.substring(0, name.length() - CHUNK_SUFFIX.length())));
+            }
+        } catch (NoSuchFileException e) {
+            throw new RuntimeException("Upload not found");
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read upload: " + e.getMessage());
+        }
+        return indexes;
+    }
+
+    private Map<String, Object> status(String uploadId, Properties session, List<Long> received) {
+        long size = Long.parseLong(session.getProperty("size"));
+        int chunkSize = Integer.parseInt(session.getProperty("chunkSize"));
+
+        List<Long> missingOffsets = new ArrayList<>();
+        long receivedBytes = 0;
+        for (long offset = 0; offset < size; offset += chunkSize) {
+            if (received.contains(offset / chunkSize)) {
+                receivedBytes += Math.min(chunkSize, size - offset);
+            } else {
+                missingOffsets.add(offset);
+            }
+        }
+
+        Map<String, Object> status = new HashMap<>();
+        status.put("uploadId", uploadId);
+        status.put("size", size);
+        status.put("chunkSize", chunkSize);
+        status.put("receivedBytes", receivedBytes);
+        status.put("missingOffsets", missingOffsets);
+        status.put("complete", missingOffsets.isEmpty());
+        return status;
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.notesapp.backend.services;
+
+import com.notesapp.backend.config.ShardRegistry;
+import com.notesapp.backend.entities.NoteContentCodec;
+import com.notesapp.backend.repositories.NoteRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Re-encodes notes written before compression was enabled, a batch per transaction.
+// Logs raw vs stored bytes and deflate CPU time so the trade-off can be read off production data.
+@Service
+public class ContentCompressionJob {
+
+    @Autowired
+    private NoteRepository noteRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ShardRegistry shardRegistry;
+
+    @Value("${notes.content.compression.reencode-batch-size:200}")
+    private int batchSize;
+
+    private final TransactionTemplate transactionTemplate;
+
+    public ContentCompressionJob(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Scheduled(fixedDelayString = "${notes.content.compression.reencode-interval-ms:300000}", initialDelay = 60000)
+    public void reencodeExistingNotes() {
+        if (!NoteContentCodec.isEnabled()) {
+            return;
+        }
+        shardRegistry.forEachShard(this::reencodeShard);
+    }
+
+    // Resumes after the last note checked on this shard. Notes at or below it that did not compress well enough
+    // stay as they are instead of being locked and deflated again on every run; later edits go through
+    // Note.setContent, which compresses on write. Changing the threshold starts the scan over.
+    private void reencodeShard(int shard) {
+        int threshold = NoteContentCodec.getThresholdChars();
+        long afterId = jdbcTemplate.queryForObject(
+                "SELECT COALESCE((SELECT last_note_id FROM content_compression_checkpoint WHERE id = 1 AND threshold_chars = ?), 0)",
+                Long.class, threshold);
+        long totalNotes = 0, rawChars = 0, storedBytes = 0, cpuNanos = 0;
+
+        while (true) {
+            List<Long> ids = noteRepository.findIdsToCompress(threshold, afterId, batchSize);
+            if (ids.isEmpty()) {
+                break;
+            }
+            afterId = ids.get(ids.size() - 1);
+
+            long lastId = afterId;
+            long[] stats = transactionTemplate.execute(status -> {
+                long[] batchStats = reencodeBatch(ids);
+                saveCheckpoint(lastId, threshold);
+                return batchStats;
+            });
+            totalNotes += ids.size();
+            rawChars += stats[0];
+            storedBytes += stats[1];
+            cpuNanos += stats[2];
+        }
+
+        if (totalNotes > 0) {
+            System.out.println("[ContentCompressionJob] Re-encoded " + totalNotes + " notes on shard " + shard + ": "
+                    + rawChars + " chars -> " + storedBytes + " bytes stored, deflate CPU "
+                    + (cpuNanos / 1_000_000) + " ms");
+        }
+    }
+
+    // Plain JDBC so re-encoding neither hydrates entities nor bumps updated_at
+    private long[] reencodeBatch(List<Long> ids) {
+        long rawChars = 0, storedBytes = 0, cpuNanos = 0;
+        List<Object[]> updates = new ArrayList<>();
+
+        String placeholders = String.join(",", ids.stream().map(id -> "?").toList());
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                "SELECT id, content FROM notes WHERE content_deflated IS NULL AND id IN (" + placeholders + ") FOR UPDATE",
+                ids.toArray());
+
+        for (Map<String, Object> row : rows) {
+            String content = (String) row.get("content");
+            long start = System.nanoTime();
+            byte[] deflated = NoteContentCodec.deflateIfLarge(content);
+            cpuNanos += System.nanoTime() - start;
+
+            rawChars += content.length();
+            if (deflated == null) {
+                storedBytes += content.length();
+                continue;
+            }
+            storedBytes += deflated.length;
+            updates.add(new Object[] { deflated, row.get("id") });
+        }
+
+        jdbcTemplate.batchUpdate("UPDATE notes SET content = NULL, content_deflated = ? WHERE id = ? AND content_deflated IS NULL", updates);
+        return new long[] { rawChars, storedBytes, cpuNanos };
+    }
+
+    private void saveCheckpoint(long lastNoteId, int threshold) {
+        jdbcTemplate.update("INSERT INTO content_compression_checkpoint (id, last_note_id, threshold_chars, updated_at) VALUES (1, ?, ?, now()) "
+                + "ON CONFLICT (id) DO UPDATE SET last_note_id = EXCLUDED.last_note_id, "
+                + "threshold_chars = EXCLUDED.threshold_chars, updated_at = now()", lastNoteId, threshold);
+    }
+}
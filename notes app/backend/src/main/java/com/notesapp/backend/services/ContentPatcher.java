@@ -0,0 +1,76 @@
+package com.notesapp.backend.services;
+
+import com.notesapp.backend.dto.NotePatchRequest.ContentEdit;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+// Applies offset-based text edits to note content. All offsets refer to the base text,
+// so edits are applied in ascending order and must not overlap.
+public final class ContentPatcher {
+
+    private ContentPatcher() {}
+
+    public static String apply(String base, List<ContentEdit> edits) {
+        String source = base != null ? base : "";
+        if (edits == null || edits.isEmpty()) {
+            return source;
+        }
+
+        List<ContentEdit> ordered = new ArrayList<>(edits);
+        ordered.sort(Comparator.comparingInt(ContentEdit::getOffset));
+
+        StringBuilder result = new StringBuilder(source.length());
+        int cursor = 0;
+        for (ContentEdit edit : ordered) {
+            int start = edit.getOffset();
+            int end = start + edit.getLength();
+            if (start < cursor) {
+                throw new RuntimeException("Invalid patch: edits overlap at offset " + start);
+            }
+            if (end > source.length()) {
+                throw new RuntimeException("Invalid patch: edit at offset " + start + " exceeds content length");
+            }
+
+            result.append(source, cursor, start);
+            if (edit.getText() != null) {
+                result.append(edit.getText());
+            }
+            cursor = end;
+        }
+        result.append(source, cursor, source.length());
+        return result.toString();
+    }
+
+    // Smallest single edit turning `before` into `after`: everything between the common prefix and suffix.
+    // Boundaries never split a surrogate pair, so the inserted text is always valid UTF-16.
+    public static ContentEdit diff(String before, String after) {
+        String a = before != null ? before : "";
+        String b = after != null ? after : "";
+
+        int maxPrefix = Math.min(a.length(), b.length());
+        int prefix = 0;
+        while (prefix < maxPrefix && a.charAt(prefix) == b.charAt(prefix)) {
+            prefix++;
+        }
+        if (prefix > 0 && Character.isHighSurrogate(a.charAt(prefix - 1))) {
+            prefix--;
+        }
+
+        int maxSuffix = maxPrefix - prefix;
+        int suffix = 0;
+        while (suffix < maxSuffix && a.charAt(a.length() - 1 - suffix) == b.charAt(b.length() - 1 - suffix)) {
+            suffix++;
+        }
+        if (suffix > 0 && Character.isLowSurrogate(a.charAt(a.length() - suffix))) {
+            suffix--;
+        }
+
+        ContentEdit edit = new ContentEdit();
+        edit.setOffset(prefix);
+        edit.setLength(a.length() - prefix - suffix);
+        edit.setText(b.substring(prefix, b.length() - suffix));
+        return edit;
+    }
+}
@@ -16,6 +16,9 @@ public class FeedbackService {
     @Autowired
     private UserFeedbackRepository feedbackRepository;
 
+    @Autowired
+    private InvalidationBus invalidationBus;
+
     public UserFeedback submitFeedback(User user, Integer rating, String message) {
         // Check if user has already submitted feedback
         Optional<UserFeedback> existingFeedback = feedbackRepository.findByUser(user);
@@ -26,6 +29,7 @@ public class FeedbackService {
 
         UserFeedback feedback = new UserFeedback(rating, message, user);
         UserFeedback saved = feedbackRepository.save(feedback);
+        invalidationBus.publish(InvalidationBus.FEEDBACK, user.getId());
         
         System.out.println("[FeedbackService] Feedback saved: ID=" + saved.getId() + ", Rating=" + rating);
         return saved;
@@ -39,18 +43,22 @@ public class FeedbackService {
         existingFeedback.setMessage(message);
         
         UserFeedback updated = feedbackRepository.save(existingFeedback);
+        invalidationBus.publish(InvalidationBus.FEEDBACK, user.getId());
         System.out.println("[FeedbackService] Feedback updated: ID=" + updated.getId() + ", New Rating=" + rating);
         return updated;
     }
 
+    @Transactional(readOnly = true)
     public boolean hasUserSubmittedFeedback(User user) {
         return feedbackRepository.existsByUser(user);
     }
 
+    @Transactional(readOnly = true)
     public UserFeedback getUserFeedback(User user) {
         return feedbackRepository.findByUser(user).orElse(null);
     }
 
+    @Transactional(readOnly = true)
     public Double getAverageSatisfactionRating() {
         Double avgRating = feedbackRepository.getAverageRating();
         if (avgRating == null) {
@@ -61,10 +69,12 @@ public class FeedbackService {
         return (avgRating / 5.0) * 100;
     }
 
+    @Transactional(readOnly = true)
     public long getTotalFeedbackCount() {
         return feedbackRepository.countFeedback();
     }
 
+    @Transactional(readOnly = true)
     public Object[][] getRatingDistribution() {
         return feedbackRepository.getRatingDistribution();
     }
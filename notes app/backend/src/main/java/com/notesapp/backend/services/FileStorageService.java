@@ -2,21 +2,76 @@ package com.notesapp.backend.services;
 
 import com.cloudinary.Cloudinary;
 import com.cloudinary.utils.ObjectUtils;
+import com.notesapp.backend.config.ShardContext;
+import com.notesapp.backend.exceptions.BlobStoreUnavailableException;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
 @Service
 public class FileStorageService {
+
+    // Public ids whose destroy failed, on the directory shard; retried by retryFailedDeletes
+    private static final String RECORD_FAILED_DELETE = "INSERT INTO failed_image_deletes (public_id, attempts, failed_at, last_error) "
+            + "VALUES (?, 0, ?, ?) ON CONFLICT (public_id) DO UPDATE SET failed_at = EXCLUDED.failed_at, last_error = EXCLUDED.last_error";
+    private static final String DUE_FAILED_DELETES = "SELECT public_id FROM failed_image_deletes WHERE attempts < ? ORDER BY failed_at LIMIT ?";
+    private static final String RETRY_FAILED = "UPDATE failed_image_deletes SET attempts = attempts + 1, failed_at = ?, last_error = ? WHERE public_id = ?";
     
     @Autowired
     private Cloudinary cloudinary;
+
+    @Autowired
+    private BlobStoreGuard blobStoreGuard;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // Rows still failing after this many retries stay in the table for manual cleanup
+    @Value("${notes.blob-store.delete-retry.max-attempts:20}")
+    private int maxDeleteAttempts;
+
+    @Value("${notes.blob-store.delete-retry.batch-size:100}")
+    private int deleteRetryBatchSize;
+
+    private TransactionTemplate separateTransaction;
+
+    @Value("${notes.direct-upload.ttl-seconds:900}")
+    private long directUploadTtlSeconds;
+
+    @Value("${notes.blob-store.connect-timeout-ms:5000}")
+    private int connectTimeoutMillis;
+
+    // Longest silence on the socket, not a limit on the whole transfer
+    @Value("${notes.blob-store.read-timeout-ms:30000}")
+    private int readTimeoutMillis;
+    
+    // A failed delete is recorded even when the caller's transaction rolls back or has already committed
+    @PostConstruct
+    public void init() {
+        separateTransaction = new TransactionTemplate(transactionManager);
+        separateTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
     
     // Cloudinary storage implementation
     public List<String> storeFilesInCloudinary(MultipartFile[] files) throws Exception {
@@ -33,16 +88,9 @@ public class FileStorageService {
                 System.out.println("[FileStorageService] Uploading file: " + file.getOriginalFilename() + ", Size: " + file.getSize());
                 
                 // Upload to Cloudinary
-                Map uploadResult = cloudinary.uploader().upload(file.getBytes(), 
-                    ObjectUtils.asMap(
-                        "folder", "notes-app", // Organize in folders
-                        "resource_type", "image",
-                        "public_id", "note_image_" + UUID.randomUUID().toString(),
-                        "overwrite", true,
-                        "format", "jpg", // Convert all to jpg for consistency
-                        "quality", "auto:good", // Automatic quality optimization
-                        "fetch_format", "auto" // Automatic format optimization
-                    ));
+                byte[] bytes = file.getBytes();
+                Map options = imageUploadOptions();
+                Map uploadResult = blobStoreGuard.call("upload", true, () -> cloudinary.uploader().upload(bytes, options));
                 
                 System.out.println("[FileStorageService] Upload result: " + uploadResult);
                 
@@ -55,6 +103,8 @@ public class FileStorageService {
                 imageUrls.add(imageUrl);
                 System.out.println("[FileStorageService] Successfully uploaded image: " + imageUrl);
                 
+            } catch (BlobStoreUnavailableException e) {
+                throw e;
             } catch (IOException e) {
                 System.err.println("[FileStorageService] IOException during upload: " + e.getMessage());
                 throw new RuntimeException("Failed to upload image to Cloudinary: " + e.getMessage());
@@ -68,21 +118,190 @@ public class FileStorageService {
         return imageUrls;
     }
     
+    // Used for resumable uploads; the SDK streams the file instead of reading it into memory
+    public String storeFileInCloudinary(Path file) {
+        if (cloudinary == null) {
+            throw new RuntimeException("Cloudinary service is not configured properly");
+        }
+        try {
+            System.out.println("[FileStorageService] Uploading assembled file, Size: " + Files.size(file));
+            Map options = imageUploadOptions();
+            Map uploadResult = blobStoreGuard.call("upload", true, () -> cloudinary.uploader().upload(file.toFile(), options));
+            
+            String imageUrl = (String) uploadResult.get("secure_url");
+            if (imageUrl == null) {
+                throw new RuntimeException("Cloudinary upload succeeded but did not return a URL");
+            }
+            System.out.println("[FileStorageService] Successfully uploaded image: " + imageUrl);
+            return imageUrl;
+        } catch (BlobStoreUnavailableException e) {
+            throw e;
+        } catch (Exception e) {
+            System.err.println("[FileStorageService] Exception during upload: " + e.getMessage());
+            throw new RuntimeException("Failed to upload image to Cloudinary: " + e.getMessage());
+        }
+    }
+    
+    // Imported notes get their own copy of each image, so deleting either note never destroys the other's asset.
+    // Only delivery URLs from our own account are copied; returns null for anything else.
+    public String copyOwnImage(String imageUrl) {
+        if (extractPublicIdFromUrl(imageUrl) == null) {
+            return null;
+        }
+        try {
+            Map options = imageUploadOptions();
+            Map uploadResult = blobStoreGuard.call("upload", true, () -> cloudinary.uploader().upload(imageUrl, options));
+            return (String) uploadResult.get("secure_url");
+        } catch (BlobStoreUnavailableException e) {
+            throw e;
+        } catch (Exception e) {
+            System.err.println("[FileStorageService] Failed to copy image " + imageUrl + ": " + e.getMessage());
+            return null;
+        }
+    }
+    
+    // Built once per image: the fixed public_id with overwrite makes a retried upload replace, not duplicate
+    private Map imageUploadOptions() {
+        return withTimeouts(ObjectUtils.asMap(
+            "folder", "notes-app", // Organize in folders
+            "resource_type", "image",
+            "public_id", "note_image_" + UUID.randomUUID().toString(),
+            "overwrite", true,
+            "format", "jpg", // Convert all to jpg for consistency
+            "quality", "auto:good", // Automatic quality optimization
+            "fetch_format", "auto" // Automatic format optimization
+        ));
+    }
+    
+    private Map withTimeouts(Map options) {
+        options.put("connect_timeout", connectTimeoutMillis);
+        options.put("connection_request_timeout", connectTimeoutMillis);
+        options.put("timeout", readTimeoutMillis);
+        return options;
+    }
+    
+    // Signed parameters for one browser-to-Cloudinary upload. The public id binds the upload to the note and
+    // records when it was issued, so confirmDirectUpload can check both without any server-side state.
+    public Map<String, Object> signDirectUpload(Long noteId) {
+        long timestamp = System.currentTimeMillis() / 1000;
+        Map<String, Object> params = new HashMap<>();
+        params.put("folder", "notes-app");
+        params.put("public_id", "note_" + noteId + "_" + timestamp + "_" + UUID.randomUUID());
+        params.put("format", "jpg"); // Same conversion as server-side uploads
+        params.put("allowed_formats", "jpg,jpeg,png,gif,webp");
+        params.put("timestamp", timestamp);
+
+        Map<String, Object> signed = new HashMap<>(params);
+        signed.put("signature", cloudinary.apiSignRequest(params, cloudinary.config.apiSecret));
+        signed.put("api_key", cloudinary.config.apiKey);
+        signed.put("uploadUrl", cloudinary.cloudinaryApiUrl("upload", ObjectUtils.asMap("resource_type", "image")));
+        signed.put("expiresAt", (timestamp + directUploadTtlSeconds) * 1000);
+        return signed;
+    }
+
+    // Checks the signature Cloudinary returned for the upload and builds the delivery URL ourselves,
+    // so a client can only attach assets that exist in our account and were issued for this note
+    public String confirmDirectUpload(Long noteId, String publicId, String version, String signature) {
+        String prefix = "notes-app/note_" + noteId + "_";
+        if (publicId == null || version == null || signature == null || !publicId.startsWith(prefix)) {
+            throw new RuntimeException("Upload does not belong to this note");
+        }
+        if (!cloudinary.verifyApiResponseSignature(publicId, version, signature)) {
+            throw new RuntimeException("Invalid upload signature");
+        }
+
+        long issuedAt, uploadedAt;
+        try {
+            issuedAt = Long.parseLong(publicId.substring(prefix.length(), publicId.indexOf('_', prefix.length())));
+            uploadedAt = Long.parseLong(version);
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Upload does not belong to this note");
+        }
+        if (uploadedAt - issuedAt > directUploadTtlSeconds) {
+            deleteImageFromCloudinary(publicId);
+            throw new RuntimeException("Upload parameters have expired");
+        }
+
+        return cloudinary.url().secure(true).resourceType("image").version(version).format("jpg").generate(publicId);
+    }
+    
     // Delete image from Cloudinary
     public void deleteImageFromCloudinary(String publicId) {
+        if (publicId == null) {
+            return;
+        }
+        try {
+            destroy(publicId);
+        } catch (IOException | RuntimeException e) {
+            // Don't fail the operation; the image is queued and destroyed once the store is reachable again
+            System.err.println("Failed to delete image from Cloudinary, queued for retry: " + e.getMessage());
+            recordFailedDelete(publicId, e);
+        }
+    }
+
+    // Skipped while the circuit is open; in half-open only the trial call gets through and the rest wait for the next run
+    @Scheduled(fixedDelayString = "${notes.blob-store.delete-retry.interval-ms:60000}", initialDelay = 60000)
+    public void retryFailedDeletes() {
+        if (blobStoreGuard.getState() == BlobStoreGuard.State.OPEN) {
+            return;
+        }
+        List<String> publicIds;
+        try {
+            publicIds = ShardContext.callOn(ShardContext.DIRECTORY_SHARD, () ->
+                    jdbcTemplate.queryForList(DUE_FAILED_DELETES, String.class, maxDeleteAttempts, deleteRetryBatchSize));
+        } catch (RuntimeException e) {
+            System.err.println("[FileStorageService] Could not read queued image deletes: " + e.getMessage());
+            return;
+        }
+
+        int destroyed = 0;
+        for (String publicId : publicIds) {
+            try {
+                // Destroying an asset that is already gone succeeds with "not found", so a repeat is harmless
+                destroy(publicId);
+                ShardContext.runOn(ShardContext.DIRECTORY_SHARD, () ->
+                        jdbcTemplate.update("DELETE FROM failed_image_deletes WHERE public_id = ?", publicId));
+                destroyed++;
+            } catch (BlobStoreUnavailableException e) {
+                break;
+            } catch (IOException | RuntimeException e) {
+                System.err.println("[FileStorageService] Retried delete of " + publicId + " failed: " + e.getMessage());
+                ShardContext.runOn(ShardContext.DIRECTORY_SHARD, () ->
+                        jdbcTemplate.update(RETRY_FAILED, new Timestamp(System.currentTimeMillis()), e.getMessage(), publicId));
+            }
+        }
+        if (destroyed > 0) {
+            System.out.println("[FileStorageService] Destroyed " + destroyed + " queued images");
+        }
+    }
+
+    private void destroy(String publicId) throws IOException {
+        blobStoreGuard.call("destroy", true, () -> cloudinary.uploader().destroy(publicId, withTimeouts(new HashMap())));
+    }
+
+    private void recordFailedDelete(String publicId, Exception failure) {
         try {
-            cloudinary.uploader().destroy(publicId, ObjectUtils.emptyMap());
-        } catch (IOException e) {
-            // Log error but don't fail the operation
-            System.err.println("Failed to delete image from Cloudinary: " + e.getMessage());
+            ShardContext.runOn(ShardContext.DIRECTORY_SHARD, () -> separateTransaction.executeWithoutResult(status ->
+                    jdbcTemplate.update(RECORD_FAILED_DELETE, publicId, new Timestamp(System.currentTimeMillis()), failure.getMessage())));
+        } catch (RuntimeException e) {
+            System.err.println("[FileStorageService] Could not queue " + publicId + " for deletion: " + e.getMessage());
         }
     }
     
-    // Extract public ID from Cloudinary URL
+    // Extract public ID from Cloudinary URL. Anything that is not an image delivery URL from our own cloud
+    // returns null, so a URL copied from someone else's note can never name an asset we would destroy.
     public String extractPublicIdFromUrl(String cloudinaryUrl) {
         try {
             // Example URL: https://res.cloudinary.com/cloud_name/image/upload/v123456/notes-app/note_image_uuid.jpg
-            String[] parts = cloudinaryUrl.split("/");
+            URI uri = URI.create(cloudinaryUrl);
+            String path = uri.getPath();
+            if (!"https".equals(uri.getScheme()) || !"res.cloudinary.com".equals(uri.getHost())
+                    || uri.getQuery() != null || uri.getFragment() != null || path.contains("..")
+                    || !path.startsWith("/" + cloudinary.config.cloudName + "/image/upload/")
+                    || !path.matches("/[^/]+/image/upload/(v\\d+/)?notes-app/[^/]+\\.[A-Za-z0-9]+")) {
+                return null;
+            }
+            String[] parts = path.split("/");
             String fileNameWithExtension = parts[parts.length - 1];
             String fileName = fileNameWithExtension.substring(0, fileNameWithExtension.lastIndexOf('.'));
             return "notes-app/" + fileName; // Include folder path
@@ -0,0 +1,322 @@
+package com.notesapp.backend.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.notesapp.backend.config.ShardContext;
+import com.notesapp.backend.entities.User;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.multipart.MultipartHttpServletRequest;
+import org.springframework.web.util.WebUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+// Makes retried POSTs carrying an Idempotency-Key header safe: the first request runs, its successful
+// response is stored in idempotency_keys on the directory shard, and later requests with the same key get
+// that response back. A placeholder row claims the key across instances; on this instance duplicates wait
+// on the in-flight execution instead of polling. Failed requests release the key so they can be retried.
+@Service
+public class IdempotencyService {
+
+    public static final String HEADER = "Idempotency-Key";
+
+    private static final int MAX_KEY_LENGTH = 255;
+    private static final long POLL_INTERVAL_MS = 200;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final long ttlMillis;
+    private final long waitMillis;
+    private final long staleMillis;
+    private final int maxEntries;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    public IdempotencyService(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper,
+                              @Value("${notes.idempotency.ttl-ms:86400000}") long ttlMillis,
+                              @Value("${notes.idempotency.wait-ms:30000}") long waitMillis,
+                              @Value("${notes.idempotency.stale-after-ms:300000}") long staleMillis,
+                              @Value("${notes.idempotency.max-entries:10000}") int maxEntries) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.ttlMillis = ttlMillis;
+        this.waitMillis = waitMillis;
+        this.staleMillis = staleMillis;
+        this.maxEntries = maxEntries;
+    }
+
+    // Runs action at most once per (user, key) and fingerprint; without a key it simply runs
+    public ResponseEntity<?> execute(User user, String key, String fingerprint, Supplier<ResponseEntity<?>> action) {
+        if (key == null || key.isBlank()) {
+            return action.get();
+        }
+        if (key.length() > MAX_KEY_LENGTH) {
+            return error(HttpStatus.BAD_REQUEST, HEADER + " must be at most " + MAX_KEY_LENGTH + " characters");
+        }
+
+        String entryKey = user.getId() + ":" + key;
+        long deadline = System.currentTimeMillis() + waitMillis;
+        while (true) {
+            Entry entry = entries.get(entryKey);
+            if (entry != null && entry.expiresAt() < System.currentTimeMillis()) {
+                entries.remove(entryKey, entry);
+                continue;
+            }
+            if (entry != null) {
+                if (!entry.fingerprint().equals(fingerprint)) {
+                    return mismatch();
+                }
+                StoredResponse stored = await(entry.response(), deadline);
+                if (stored == null && System.currentTimeMillis() >= deadline) {
+                    return stillRunning();
+                }
+                if (stored != null) {
+                    return replay(stored);
+                }
+                // The original request failed and released the key; take it over
+                continue;
+            }
+
+            Entry claimed = new Entry(fingerprint, new CompletableFuture<>(), System.currentTimeMillis() + ttlMillis);
+            if (entries.putIfAbsent(entryKey, claimed) != null) {
+                continue;
+            }
+            trimEntries();
+            return runClaimed(user, key, entryKey, claimed, deadline, action);
+        }
+    }
+
+    private ResponseEntity<?> runClaimed(User user, String key, String entryKey, Entry entry, long deadline,
+                                         Supplier<ResponseEntity<?>> action) {
+        StoredResponse stored = null;
+        boolean ownsRow = false;
+        try {
+            while (!claimRow(user.getId(), key, entry.fingerprint())) {
+                // Another instance holds or has completed the key
+                Map<String, Object> row = findRow(user.getId(), key);
+                if (row == null) {
+                    continue;
+                }
+                if (!entry.fingerprint().equals(row.get("fingerprint"))) {
+                    entries.remove(entryKey, entry);
+                    return mismatch();
+                }
+                if (row.get("response_status") != null) {
+                    stored = new StoredResponse(((Number) row.get("response_status")).intValue(), (String) row.get("response_body"));
+                    return replay(stored);
+                }
+                if (System.currentTimeMillis() >= deadline) {
+                    entries.remove(entryKey, entry);
+                    return stillRunning();
+                }
+                sleep(POLL_INTERVAL_MS);
+            }
+            ownsRow = true;
+
+            ResponseEntity<?> response = action.get();
+            if (response.getStatusCode().is2xxSuccessful()) {
+                stored = saveResponse(user.getId(), key, response);
+            } else {
+                releaseRow(user.getId(), key);
+            }
+            return response;
+        } catch (RuntimeException e) {
+            if (ownsRow) {
+                releaseRow(user.getId(), key);
+            }
+            throw e;
+        } finally {
+            // Waiters get the stored response, or null to retry the request themselves
+            if (stored == null) {
+                entries.remove(entryKey, entry);
+            }
+            entry.response().complete(stored);
+        }
+    }
+
+    // Inserts the placeholder, or takes over a row that expired or was left behind by a crashed instance
+    private boolean claimRow(Long userId, String key, String fingerprint) {
+        long now = System.currentTimeMillis();
+        return ShardContext.callOn(ShardContext.DIRECTORY_SHARD, () -> jdbcTemplate.update(
+                "INSERT INTO idempotency_keys (user_id, idempotency_key, fingerprint, created_at, expires_at) " +
+                "VALUES (?, ?, ?, ?, ?) " +
+                "ON CONFLICT (user_id, idempotency_key) DO UPDATE SET fingerprint = EXCLUDED.fingerprint, " +
+                "response_status = NULL, response_body = NULL, created_at = EXCLUDED.created_at, expires_at = EXCLUDED.expires_at " +
+                "WHERE idempotency_keys.expires_at < ? " +
+                "OR (idempotency_keys.response_status IS NULL AND idempotency_keys.created_at < ?)",
+                userId, key, fingerprint, new Timestamp(now), new Timestamp(now + ttlMillis),
+                new Timestamp(now), new Timestamp(now - staleMillis))) == 1;
+    }
+
+    private Map<String, Object> findRow(Long userId, String key) {
+        List<Map<String, Object>> rows = ShardContext.callOn(ShardContext.DIRECTORY_SHARD, () -> jdbcTemplate.queryForList(
+                "SELECT fingerprint, response_status, response_body FROM idempotency_keys WHERE user_id = ? AND idempotency_key = ?",
+                userId, key));
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    // The request already took effect, so a failure here only costs the replay, not the response
+    private StoredResponse saveResponse(Long userId, String key, ResponseEntity<?> response) {
+        try {
+            StoredResponse stored = new StoredResponse(response.getStatusCode().value(), objectMapper.writeValueAsString(response.getBody()));
+            ShardContext.runOn(ShardContext.DIRECTORY_SHARD, () -> jdbcTemplate.update(
+                    "UPDATE idempotency_keys SET response_status = ?, response_body = ? WHERE user_id = ? AND idempotency_key = ?",
+                    stored.status(), stored.body(), userId, key));
+            return stored;
+        } catch (JsonProcessingException | RuntimeException e) {
+            System.err.println("[IdempotencyService] Could not store response for key " + key + ": " + e.getMessage());
+            releaseRow(userId, key);
+            return null;
+        }
+    }
+
+    private void releaseRow(Long userId, String key) {
+        try {
+            ShardContext.runOn(ShardContext.DIRECTORY_SHARD, () -> jdbcTemplate.update(
+                    "DELETE FROM idempotency_keys WHERE user_id = ? AND idempotency_key = ? AND response_status IS NULL",
+                    userId, key));
+        } catch (RuntimeException e) {
+            System.err.println("[IdempotencyService] Could not release key " + key + ": " + e.getMessage());
+        }
+    }
+
+    // Covers method, path, form fields and uploaded file contents, so a key reused for a different request is caught
+    public static String fingerprint(HttpServletRequest request) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            update(digest, request.getMethod());
+            update(digest, request.getRequestURI());
+            for (Map.Entry<String, String[]> parameter : new TreeMap<>(request.getParameterMap()).entrySet()) {
+                update(digest, parameter.getKey());
+                for (String value : parameter.getValue()) {
+                    update(digest, value);
+                }
+            }
+
+            MultipartHttpServletRequest multipart = WebUtils.getNativeRequest(request, MultipartHttpServletRequest.class);
+            if (multipart != null) {
+                for (Map.Entry<String, List<MultipartFile>> files : new TreeMap<>(multipart.getMultiFileMap()).entrySet()) {
+                    update(digest, files.getKey());
+                    for (MultipartFile file : files.getValue()) {
+                        update(digest, String.valueOf(file.getOriginalFilename()));
+                        try (InputStream in = file.getInputStream()) {
+                            byte[] buffer = new byte[8192];
+                            int read;
+                            while ((read = in.read(buffer)) != -1) {
+                                digest.update(buffer, 0, read);
+                            }
+                        }
+                    }
+                }
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException | IOException e) {
+            throw new RuntimeException("Could not fingerprint request: " + e.getMessage());
+        }
+    }
+
+    // Length-prefixed so ("ab", "c") and ("a", "bc") hash differently
+    private static void update(MessageDigest digest, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        digest.update((byte) (bytes.length >>> 24));
+        digest.update((byte) (bytes.length >>> 16));
+        digest.update((byte) (bytes.length >>> 8));
+        digest.update((byte) bytes.length);
+        digest.update(bytes);
+    }
+
+    @Scheduled(fixedDelayString = "${notes.idempotency.cleanup-interval-ms:3600000}", initialDelay = 60000)
+    public void removeExpired() {
+        long now = System.currentTimeMillis();
+        entries.values().removeIf(entry -> entry.response().isDone() && entry.expiresAt() < now);
+        try {
+            int removed = ShardContext.callOn(ShardContext.DIRECTORY_SHARD, () -> jdbcTemplate.update(
+                    "DELETE FROM idempotency_keys WHERE expires_at < ?", new Timestamp(now)));
+            if (removed > 0) {
+                System.out.println("[IdempotencyService] Removed " + removed + " expired idempotency keys");
+            }
+        } catch (RuntimeException e) {
+            System.err.println("[IdempotencyService] Could not remove expired keys: " + e.getMessage());
+        }
+    }
+
+    // Completed responses are also in the table, so they can be dropped first; in-flight entries never are
+    private void trimEntries() {
+        if (entries.size() > maxEntries) {
+            entries.values().removeIf(entry -> entry.response().isDone());
+        }
+    }
+
+    private StoredResponse await(CompletableFuture<StoredResponse> response, long deadline) {
+        try {
+            return response.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the original request");
+        }
+    }
+
+    private ResponseEntity<?> replay(StoredResponse stored) {
+        try {
+            // Re-serialized by the message converters, so a replay honours the Accept header like the original
+            return ResponseEntity.status(stored.status())
+                    .header("Idempotent-Replayed", "true")
+                    .body(objectMapper.readTree(stored.body()));
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Stored response for " + HEADER + " is unreadable: " + e.getMessage());
+        }
+    }
+
+    private static ResponseEntity<?> mismatch() {
+        return error(HttpStatus.UNPROCESSABLE_ENTITY, HEADER + " was already used for a different request");
+    }
+
+    private static ResponseEntity<?> stillRunning() {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", "A request with this " + HEADER + " is still in progress");
+        return ResponseEntity.status(HttpStatus.CONFLICT).header("Retry-After", "1").body(error);
+    }
+
+    private static ResponseEntity<?> error(HttpStatus status, String message) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", message);
+        return ResponseEntity.status(status).body(error);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the original request");
+        }
+    }
+
+    private record Entry(String fingerprint, CompletableFuture<StoredResponse> response, long expiresAt) {}
+
+    private record StoredResponse(int status, String body) {}
+}
@@ -0,0 +1,213 @@
+package com.notesapp.backend.services;
+
+import com.notesapp.backend.config.ShardContext;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Tells every backend instance that an entity changed, so it can evict or refresh its in-memory copies.
+// Events go out with Postgres NOTIFY on the directory database after the writing transaction commits; every
+// instance LISTENs on a dedicated connection, the sender included, so handlers must be idempotent.
+// Notifications sent while that connection was down are lost, so after a reconnect every subscriber drops or
+// reloads everything it holds.
+@Service
+public class InvalidationBus {
+
+    public static final String USER = "user";
+    public static final String NOTE_DELETED = "note_deleted";
+    public static final String SHARE_LINK = "share_link";
+    public static final String SHARE_FORWARDS = "share_forwards";
+    public static final String FEEDBACK = "feedback";
+
+    private static final String CHANNEL = "notes_invalidation";
+    private static final long MAX_RECONNECT_DELAY_MS = 30000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DataSourceProperties dataSourceProperties;
+    private final boolean enabled;
+    private final int pollMillis;
+
+    private final Map<String, List<Consumer<String>>> subscribersByTopic = new ConcurrentHashMap<>();
+    private final List<Runnable> resetHandlers = new CopyOnWriteArrayList<>();
+    private final ExecutorService publisher;
+    private volatile boolean running = true;
+    private volatile boolean listening;
+    private Thread listener;
+
+    public InvalidationBus(
+            JdbcTemplate jdbcTemplate,
+            DataSourceProperties dataSourceProperties,
+            @Value("${notes.invalidation.enabled:true}") boolean enabled,
+            @Value("${notes.invalidation.poll-ms:10000}") int pollMillis
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dataSourceProperties = dataSourceProperties;
+        this.enabled = enabled;
+        this.pollMillis = pollMillis;
+        this.publisher = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "invalidation-publisher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void subscribe(String topic, Consumer<String> handler) {
+        subscribersByTopic.computeIfAbsent(topic, t -> new CopyOnWriteArrayList<>()).add(handler);
+    }
+
+    // Called after the listener reconnects, when events may have been missed
+    public void onReset(Runnable handler) {
+        resetHandlers.add(handler);
+    }
+
+    // True before the first connection and while reconnecting: events from other instances are not arriving,
+    // so state that relies on them to stay complete must not be trusted. Never true while disabled, which means
+    // a single instance with no other writers to hear from.
+    public boolean isDisconnected() {
+        return enabled && !listening;
+    }
+
+    // Sent only if the surrounding transaction commits, from a separate thread and connection: the
+    // transaction may be on another shard, and a NOTIFY after commit on its connection would never be committed
+    public void publish(String topic, Object key) {
+        if (!enabled) {
+            return;
+        }
+        String payload = topic + "|" + key;
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    send(payload);
+                }
+            });
+        } else {
+            send(payload);
+        }
+    }
+
+    private void send(String payload) {
+        publisher.execute(() -> {
+            try {
+                ShardContext.runOn(ShardContext.DIRECTORY_SHARD,
+                        () -> jdbcTemplate.queryForObject("SELECT pg_notify(?, ?)", Object.class, CHANNEL, payload));
+            } catch (RuntimeException e) {
+                System.err.println("[InvalidationBus] Failed to publish " + payload + ": " + e.getMessage());
+            }
+        });
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        listener = new Thread(this::listen, "invalidation-listener");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (listener != null) {
+            listener.interrupt();
+        }
+        // Lets a short-lived process such as the resharding tool deliver its last events
+        publisher.shutdown();
+        publisher.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    private void listen() {
+        long reconnectDelay = 1000;
+        boolean connectedBefore = false;
+
+        while (running) {
+            // Outside the pool: the connection is held for the lifetime of the instance
+            try (Connection connection = DriverManager.getConnection(dataSourceProperties.determineUrl(),
+                    dataSourceProperties.determineUsername(), dataSourceProperties.determinePassword())) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+                if (connectedBefore) {
+                    System.out.println("[InvalidationBus] Listener reconnected, dropping all cached state");
+                    resetAll();
+                }
+                // Only after the reset handlers, so nothing trusts its state before it has been reloaded
+                listening = true;
+                connectedBefore = true;
+                reconnectDelay = 1000;
+
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(pollMillis);
+                    if (notifications == null || notifications.length == 0) {
+                        // A dead connection only shows up when it is used
+                        try (Statement statement = connection.createStatement()) {
+                            statement.execute("SELECT 1");
+                        }
+                        continue;
+                    }
+                    for (PGNotification notification : notifications) {
+                        dispatch(notification.getParameter());
+                    }
+                }
+            } catch (Exception e) {
+                listening = false;
+                if (!running) {
+                    return;
+                }
+                System.err.println("[InvalidationBus] Listener connection lost, retrying in " + reconnectDelay + " ms: " + e.getMessage());
+                try {
+                    Thread.sleep(reconnectDelay);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+                reconnectDelay = Math.min(reconnectDelay * 2, MAX_RECONNECT_DELAY_MS);
+            }
+        }
+    }
+
+    private void dispatch(String payload) {
+        String[] parts = payload.split("\\|", 2);
+        if (parts.length != 2) {
+            return;
+        }
+        for (Consumer<String> handler : subscribersByTopic.getOrDefault(parts[0], List.of())) {
+            try {
+                handler.accept(parts[1]);
+            } catch (RuntimeException e) {
+                System.err.println("[InvalidationBus] Handler for " + parts[0] + " failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void resetAll() {
+        for (Runnable handler : resetHandlers) {
+            try {
+                handler.run();
+            } catch (RuntimeException e) {
+                System.err.println("[InvalidationBus] Reset handler failed: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.notesapp.backend.services;
+
+import com.notesapp.backend.config.ShardRegistry;
+import com.notesapp.backend.exceptions.BlobStoreUnavailableException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Blob;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+// Moves images stored in note_images (large objects from before the Cloudinary switch) to Cloudinary, a few
+// at a time in id order. Each blob is streamed to a temp file and uploaded from there; then, in one transaction,
+// /api/images/{id} references in the note are replaced by the Cloudinary URL, the old id is recorded in
+// migrated_images so ImageController can redirect it, the large object and row are deleted and the checkpoint
+// advances. A crash at any point just repeats the current image on the next run.
+// Several instances may run the job: each shard is migrated by whichever instance holds its advisory lock, and
+// the final transaction only goes ahead while it holds the note_images row, so an image is never applied twice.
+@Service
+public class LegacyImageMigrator {
+
+    // Runs in a row failing on the same image before it is skipped and left in place
+    private static final int MAX_FAILURES = 3;
+    // Advisory locks are per database, so one key serializes the job per shard
+    private static final long MIGRATION_LOCK_KEY = 0x6c65676163795f69L;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private ShardRegistry shardRegistry;
+
+    @Value("${notes.legacy-images.migration.enabled:false}")
+    private boolean enabled;
+
+    @Value("${notes.legacy-images.migration.batch-size:20}")
+    private int batchSize;
+
+    @Value("${notes.legacy-images.migration.pause-ms:500}")
+    private long pauseMillis;
+
+    private final TransactionTemplate transactionTemplate;
+    private final Map<Integer, Failure> failuresByShard = new HashMap<>();
+
+    public LegacyImageMigrator(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    // Used by ImageController for ids that no longer have a row
+    public String findMigratedUrl(long imageId) {
+        try {
+            return jdbcTemplate.queryForObject("SELECT url FROM migrated_images WHERE image_id = ?", String.class, imageId);
+        } catch (EmptyResultDataAccessException e) {
+            return null;
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${notes.legacy-images.migration.interval-ms:60000}", initialDelay = 60000)
+    public void migrateBatch() {
+        if (!enabled) {
+            return;
+        }
+        shardRegistry.forEachShard(this::migrateShard);
+    }
+
+    // The lock is held by one pooled connection for the whole batch; the batch itself runs on other connections
+    // because uploads happen between its transactions. It is released with the connection if the node dies.
+    private void migrateShard(int shard) {
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement lock = connection.prepareStatement("SELECT pg_try_advisory_lock(?)")) {
+                lock.setLong(1, MIGRATION_LOCK_KEY);
+                try (ResultSet rs = lock.executeQuery()) {
+                    if (!rs.next() || !rs.getBoolean(1)) {
+                        return null;
+                    }
+                }
+            }
+            try {
+                migrateLocked(shard);
+            } finally {
+                try (PreparedStatement unlock = connection.prepareStatement("SELECT pg_advisory_unlock(?)")) {
+                    unlock.setLong(1, MIGRATION_LOCK_KEY);
+                    unlock.executeQuery().close();
+                }
+            }
+            return null;
+        });
+    }
+
+    private void migrateLocked(int shard) {
+        long checkpoint = jdbcTemplate.queryForObject(
+                "SELECT COALESCE((SELECT last_image_id FROM legacy_image_migration WHERE id = 1), 0)", Long.class);
+        List<Long> ids = jdbcTemplate.queryForList(
+                "SELECT id FROM note_images WHERE id > ? ORDER BY id LIMIT ?", Long.class, checkpoint, batchSize);
+
+        int migrated = 0;
+        for (Long imageId : ids) {
+            try {
+                if (migrateImage(imageId)) {
+                    migrated++;
+                }
+                failuresByShard.remove(shard);
+            } catch (BlobStoreUnavailableException e) {
+                System.err.println("[LegacyImageMigrator] Image storage unavailable, pausing on shard " + shard);
+                break;
+            } catch (RuntimeException e) {
+                System.err.println("[LegacyImageMigrator] Could not migrate image " + imageId + " on shard " + shard + ": " + e.getMessage());
+                Failure failure = failuresByShard.get(shard);
+                int count = failure != null && failure.imageId() == imageId ? failure.count() + 1 : 1;
+                if (count >= MAX_FAILURES) {
+                    System.err.println("[LegacyImageMigrator] Skipping image " + imageId + " on shard " + shard + "; it stays in note_images");
+                    transactionTemplate.executeWithoutResult(status -> saveCheckpoint(imageId, 0));
+                    failuresByShard.remove(shard);
+                } else {
+                    failuresByShard.put(shard, new Failure(imageId, count));
+                }
+                break;
+            }
+            // Leaves room for foreground queries and uploads between images
+            try {
+                Thread.sleep(pauseMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (migrated > 0) {
+            System.out.println("[LegacyImageMigrator] Moved " + migrated + " images to Cloudinary on shard " + shard);
+        }
+    }
+
+    // False when the image was left to another run or had disappeared with its note
+    private boolean migrateImage(long imageId) {
+        Path spool;
+        try {
+            spool = Files.createTempFile("legacy-image-" + imageId + "-", ".bin");
+        } catch (IOException e) {
+            throw new RuntimeException("Could not create temp file: " + e.getMessage());
+        }
+        try {
+            // Large objects can only be read inside a transaction
+            Long noteId = transactionTemplate.execute(status -> jdbcTemplate.query(
+                    "SELECT note_id, image_data FROM note_images WHERE id = ?",
+                    rs -> {
+                        if (!rs.next()) {
+                            return null;
+                        }
+                        Blob data = rs.getBlob(2);
+                        try (InputStream in = data.getBinaryStream()) {
+                            Files.copy(in, spool, StandardCopyOption.REPLACE_EXISTING);
+                        } catch (IOException e) {
+                            throw new RuntimeException("Could not read image data: " + e.getMessage());
+                        }
+                        return rs.getLong(1);
+                    },
+                    imageId));
+            if (noteId == null) {
+                return false;
+            }
+
+            String url = fileStorageService.storeFileInCloudinary(spool);
+            Boolean applied;
+            try {
+                applied = transactionTemplate.execute(status -> {
+                    // Gone or held: the note was deleted, or another run is applying the same image
+                    if (jdbcTemplate.queryForList("SELECT id FROM note_images WHERE id = ? FOR UPDATE SKIP LOCKED", Long.class, imageId).isEmpty()) {
+                        return false;
+                    }
+                    rewriteNoteReferences(noteId, imageId, url);
+                    jdbcTemplate.update("INSERT INTO migrated_images (image_id, url) VALUES (?, ?) ON CONFLICT (image_id) DO NOTHING", imageId, url);
+                    jdbcTemplate.queryForList("SELECT lo_unlink(image_data) FROM note_images WHERE id = ?", imageId);
+                    if (jdbcTemplate.update("DELETE FROM note_images WHERE id = ?", imageId) == 0) {
+                        status.setRollbackOnly();
+                        return false;
+                    }
+                    saveCheckpoint(imageId, 1);
+                    return true;
+                });
+            } catch (RuntimeException e) {
+                fileStorageService.deleteImageFromCloudinary(fileStorageService.extractPublicIdFromUrl(url));
+                throw e;
+            }
+            if (!Boolean.TRUE.equals(applied)) {
+                fileStorageService.deleteImageFromCloudinary(fileStorageService.extractPublicIdFromUrl(url));
+                System.out.println("[LegacyImageMigrator] Image " + imageId + " was locked or already removed; deleted its upload");
+                return false;
+            }
+            return true;
+        } finally {
+            try {
+                Files.deleteIfExists(spool);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    // Entries pointing at /api/images/{id} are replaced; a note that only listed the image in note_images gets it
+    // appended, so it stays visible once the row is gone. The version bump makes concurrent saves of the note
+    // fail their optimistic-lock check instead of writing the old list back.
+    private void rewriteNoteReferences(long noteId, long imageId, String url) {
+        String imageUrls = jdbcTemplate.queryForObject("SELECT image_urls FROM notes WHERE id = ? FOR UPDATE", String.class, noteId);
+        Pattern reference = Pattern.compile(".*/api/images/" + imageId + "([?#].*)?");
+
+        List<String> urls = new ArrayList<>();
+        boolean replaced = false;
+        if (imageUrls != null && !imageUrls.isBlank()) {
+            for (String existing : imageUrls.split(",")) {
+                if (reference.matcher(existing.trim()).matches()) {
+                    urls.add(url);
+                    replaced = true;
+                } else {
+                    urls.add(existing);
+                }
+            }
+        }
+        if (!replaced) {
+            urls.add(url);
+        }
+        jdbcTemplate.update("UPDATE notes SET image_urls = ?, version = version + 1 WHERE id = ?", String.join(",", urls), noteId);
+    }
+
+    private void saveCheckpoint(long imageId, int migrated) {
+        jdbcTemplate.update("INSERT INTO legacy_image_migration (id, last_image_id, migrated, updated_at) VALUES (1, ?, ?, now()) "
+                + "ON CONFLICT (id) DO UPDATE SET last_image_id = EXCLUDED.last_image_id, "
+                + "migrated = legacy_image_migration.migrated + EXCLUDED.migrated, updated_at = now()", imageId, migrated);
+    }
+
+    private record Failure(long imageId, int count) {}
+}
@@ -0,0 +1,330 @@
+package com.notesapp.backend.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// In-process fan-out of note change events to Server-Sent Event subscribers, keyed by note id. Subscribers that
+// came in through a share link are also indexed by its share id, so they are disconnected once the link goes away.
+// Each connection has a bounded queue drained by a sender pool; a subscriber whose queue overflows, or
+// whose current write has been blocked for longer than send-timeout-ms, is disconnected instead of
+// slowing down publishers or other viewers. A write to a stalled client blocks only the thread doing it;
+// the pool grows past such threads so healthy subscribers keep being served.
+@Service
+public class NoteEventHub {
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${notes.events.queue-capacity:64}")
+    private int queueCapacity;
+
+    @Value("${notes.events.max-subscribers:10000}")
+    private int maxSubscribers;
+
+    @Value("${notes.events.heartbeat-interval-ms:20000}")
+    private long heartbeatIntervalMs;
+
+    @Value("${notes.events.connection-timeout-ms:1800000}")
+    private long connectionTimeoutMs;
+
+    @Value("${notes.events.send-timeout-ms:5000}")
+    private long sendTimeoutMs;
+
+    private final Map<Long, Set<Subscriber>> subscribersByNote = new ConcurrentHashMap<>();
+    private final Map<UUID, Set<Subscriber>> subscribersByShare = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+
+    private ExecutorService senders;
+    private ScheduledExecutorService heartbeats;
+
+    @PostConstruct
+    public void start() {
+        // A thread is held only while a write is in progress, microseconds for a healthy client. Each subscriber
+        // has at most one write in flight, so threads are bounded by max-subscribers plus evicted subscribers
+        // whose write has not yet hit the container's write timeout.
+        senders = Executors.newCachedThreadPool(daemonThreads("note-events-"));
+        heartbeats = Executors.newSingleThreadScheduledExecutor(daemonThreads("note-events-heartbeat-"));
+        heartbeats.scheduleAtFixedRate(this::sendHeartbeats, heartbeatIntervalMs, heartbeatIntervalMs, TimeUnit.MILLISECONDS);
+        long checkInterval = Math.max(100, Math.min(1000, sendTimeoutMs / 2));
+        heartbeats.scheduleAtFixedRate(this::checkSenders, checkInterval, checkInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        heartbeats.shutdownNow();
+        subscribersByNote.values().forEach(subscribers -> subscribers.forEach(Subscriber::close));
+        senders.shutdown();
+    }
+
+    public SseEmitter subscribe(Long noteId) {
+        return subscribe(noteId, null);
+    }
+
+    // A viewer holding only a share link; closeShared ends the stream when that link is deleted or expires
+    public SseEmitter subscribeShared(Long noteId, UUID shareId) {
+        return subscribe(noteId, shareId);
+    }
+
+    private SseEmitter subscribe(Long noteId, UUID shareId) {
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            throw new IllegalStateException("Too many live connections");
+        }
+
+        SseEmitter emitter = new SseEmitter(connectionTimeoutMs);
+        Subscriber subscriber = new Subscriber(noteId, shareId, emitter);
+        // Added inside compute so a concurrent remove() cannot drop the set between lookup and add
+        subscribersByNote.compute(noteId, (id, subscribers) -> add(subscribers, subscriber));
+        if (shareId != null) {
+            subscribersByShare.compute(shareId, (id, subscribers) -> add(subscribers, subscriber));
+        }
+
+        emitter.onCompletion(() -> remove(subscriber));
+        emitter.onTimeout(subscriber::close);
+        emitter.onError(e -> remove(subscriber));
+
+        subscriber.offer(new Frame("subscribed", "{\"noteId\":" + noteId + "}"));
+        return emitter;
+    }
+
+    // Delivers after the surrounding transaction commits, so subscribers never see rolled-back state.
+    // The payload supplier runs only then, once the entity's new version is known.
+    public void publish(Long noteId, String type, Supplier<Map<String, Object>> payload) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    dispatch(noteId, type, payload);
+                }
+            });
+        } else {
+            dispatch(noteId, type, payload);
+        }
+    }
+
+    // Disconnects everyone watching through this share link. Like publish, waits for the surrounding transaction,
+    // so a delete that rolls back leaves its viewers connected.
+    public void closeShared(UUID shareId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    closeSubscribers(shareId);
+                }
+            });
+        } else {
+            closeSubscribers(shareId);
+        }
+    }
+
+    public Set<UUID> getSharedSubscriptions() {
+        return Set.copyOf(subscribersByShare.keySet());
+    }
+
+    private void closeSubscribers(UUID shareId) {
+        Set<Subscriber> subscribers = subscribersByShare.get(shareId);
+        if (subscribers != null) {
+            subscribers.forEach(Subscriber::close);
+        }
+    }
+
+    public int getSubscriberCount() {
+        return subscriberCount.get();
+    }
+
+    private void dispatch(Long noteId, String type, Supplier<Map<String, Object>> payload) {
+        Set<Subscriber> subscribers = subscribersByNote.get(noteId);
+        if (subscribers == null || subscribers.isEmpty()) {
+            return;
+        }
+
+        // Serialized once per event regardless of the number of viewers
+        Frame frame;
+        try {
+            frame = new Frame(type, objectMapper.writeValueAsString(payload.get()));
+        } catch (JsonProcessingException e) {
+            System.err.println("[NoteEventHub] Could not serialize " + type + " event: " + e.getMessage());
+            return;
+        }
+
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(frame);
+        }
+    }
+
+    private void sendHeartbeats() {
+        for (Set<Subscriber> subscribers : subscribersByNote.values()) {
+            for (Subscriber subscriber : subscribers) {
+                subscriber.offer(Frame.HEARTBEAT);
+            }
+        }
+    }
+
+    // Evicts subscribers whose write has stalled
+    private void checkSenders() {
+        long now = System.nanoTime();
+        for (Set<Subscriber> subscribers : subscribersByNote.values()) {
+            for (Subscriber subscriber : subscribers) {
+                if (subscriber.isStalled(now)) {
+                    System.err.println("[NoteEventHub] Dropping subscriber of note " + subscriber.noteId
+                            + ": write blocked for over " + sendTimeoutMs + " ms");
+                    subscriber.close();
+                }
+            }
+        }
+    }
+
+    private void remove(Subscriber subscriber) {
+        if (!subscriber.removed.compareAndSet(false, true)) {
+            return;
+        }
+        subscriberCount.decrementAndGet();
+        subscribersByNote.computeIfPresent(subscriber.noteId, (id, subscribers) -> without(subscribers, subscriber));
+        if (subscriber.shareId != null) {
+            subscribersByShare.computeIfPresent(subscriber.shareId, (id, subscribers) -> without(subscribers, subscriber));
+        }
+    }
+
+    private static Set<Subscriber> add(Set<Subscriber> subscribers, Subscriber subscriber) {
+        Set<Subscriber> set = subscribers != null ? subscribers : ConcurrentHashMap.newKeySet();
+        set.add(subscriber);
+        return set;
+    }
+
+    private static Set<Subscriber> without(Set<Subscriber> subscribers, Subscriber subscriber) {
+        subscribers.remove(subscriber);
+        return subscribers.isEmpty() ? null : subscribers;
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private record Frame(String type, String data) {
+        static final Frame HEARTBEAT = new Frame(null, null);
+    }
+
+    private class Subscriber {
+        private final Long noteId;
+        private final UUID shareId; // null for the note's owner
+        private final SseEmitter emitter;
+        private final BlockingQueue<Frame> queue = new ArrayBlockingQueue<>(queueCapacity);
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final AtomicBoolean removed = new AtomicBoolean();
+        private volatile long sendingSince; // System.nanoTime() when the current write started, 0 when idle
+
+        Subscriber(Long noteId, UUID shareId, SseEmitter emitter) {
+            this.noteId = noteId;
+            this.shareId = shareId;
+            this.emitter = emitter;
+        }
+
+        void offer(Frame frame) {
+            if (removed.get()) {
+                return;
+            }
+            if (!queue.offer(frame)) {
+                // Slow consumer: the client reconnects and refetches instead of holding back the hub
+                close();
+                return;
+            }
+            scheduleDrain();
+        }
+
+        private void scheduleDrain() {
+            if (draining.compareAndSet(false, true)) {
+                try {
+                    senders.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    // Only during shutdown
+                    draining.set(false);
+                }
+            }
+        }
+
+        private void drain() {
+            try {
+                Frame frame;
+                while (!removed.get() && (frame = queue.poll()) != null) {
+                    sendingSince = System.nanoTime();
+                    if (frame == Frame.HEARTBEAT) {
+                        emitter.send(SseEmitter.event().comment("heartbeat"));
+                    } else {
+                        emitter.send(SseEmitter.event().name(frame.type()).data(frame.data(), MediaType.APPLICATION_JSON));
+                    }
+                    sendingSince = 0;
+                }
+            } catch (IOException | IllegalStateException e) {
+                evict();
+            } finally {
+                sendingSince = 0;
+                draining.set(false);
+            }
+
+            if (removed.get()) {
+                complete();
+            } else if (!queue.isEmpty()) {
+                // A frame may have arrived after the last poll but before draining was cleared
+                scheduleDrain();
+            }
+        }
+
+        boolean isStalled(long now) {
+            long since = sendingSince;
+            return since != 0 && now - since > TimeUnit.MILLISECONDS.toNanos(sendTimeoutMs);
+        }
+
+        private void evict() {
+            remove(this);
+            queue.clear();
+        }
+
+        // The emitter's lock is held for the whole of a write, so while one is in progress completing it is
+        // left to the sender thread, which checks removed once the write returns
+        void close() {
+            evict();
+            if (!draining.get()) {
+                complete();
+            }
+        }
+
+        private void complete() {
+            try {
+                emitter.complete();
+            } catch (RuntimeException ignored) {
+                // Already completed by the container
+            }
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.notesapp.backend.services;
+
+import com.notesapp.backend.dto.NotePatchRequest.ContentEdit;
+import com.notesapp.backend.entities.NoteRevision;
+import com.notesapp.backend.repositories.NoteRevisionRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+// Revision history stored as forward diffs with a full snapshot every snapshot-interval revisions,
+// so reconstructing any revision replays at most that many edits.
+@Service
+@Transactional
+public class NoteRevisionService {
+
+    private static final String INSERT_REVISION =
+            "INSERT INTO note_revisions (note_id, revision, snapshot, edit_offset, edit_length, text, title, edited_by, created_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    public record Change(Long noteId, String oldTitle, String oldContent, String newTitle, String newContent) {}
+
+    @Autowired
+    private NoteRevisionRepository revisionRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${notes.revisions.snapshot-interval:20}")
+    private int snapshotInterval;
+
+    // Must see every content change of a note, otherwise the diff chain breaks
+    public void recordChange(Long noteId, String oldTitle, String oldContent, String newTitle, String newContent, String editedBy) {
+        recordChanges(List.of(new Change(noteId, oldTitle, oldContent, newTitle, newContent)), editedBy);
+    }
+
+    // One query for the latest revision numbers and one batched insert, however many notes changed.
+    // Callers hold the notes' row locks, so no other writer can take the same revision numbers.
+    public void recordChanges(List<Change> changes, String editedBy) {
+        List<Change> changed = changes.stream()
+                .filter(change -> !Objects.equals(change.oldTitle(), change.newTitle())
+                        || !Objects.equals(change.oldContent(), change.newContent()))
+                .toList();
+        if (changed.isEmpty()) {
+            return;
+        }
+
+        Map<Long, Integer> latestByNote = new HashMap<>();
+        for (Object[] row : revisionRepository.findLatestRevisions(changed.stream().map(Change::noteId).toList())) {
+            latestByNote.put((Long) row[0], (Integer) row[1]);
+        }
+
+        List<NoteRevision> revisions = new ArrayList<>();
+        for (Change change : changed) {
+            Long noteId = change.noteId();
+            Integer latest = latestByNote.get(noteId);
+            if (latest == null) {
+                // First recorded change: keep the pre-existing state so it can be restored too
+                revisions.add(NoteRevision.snapshot(noteId, 1, change.oldTitle(), change.oldContent(), null));
+                latest = 1;
+            }
+
+            int next = latest + 1;
+            if ((next - 1) % snapshotInterval == 0) {
+                revisions.add(NoteRevision.snapshot(noteId, next, change.newTitle(), change.newContent(), editedBy));
+            } else {
+                ContentEdit edit = ContentPatcher.diff(change.oldContent(), change.newContent());
+                revisions.add(NoteRevision.edit(noteId, next, change.newTitle(),
+                        edit.getOffset(), edit.getLength(), edit.getText(), editedBy));
+            }
+            latestByNote.put(noteId, next);
+        }
+        insertRevisions(revisions);
+    }
+
+    // Identity ids keep Hibernate from batching these inserts, so they go through one JDBC batch instead
+    private void insertRevisions(List<NoteRevision> revisions) {
+        LocalDateTime now = LocalDateTime.now();
+        jdbcTemplate.batchUpdate(INSERT_REVISION, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement statement, int i) throws SQLException {
+                NoteRevision revision = revisions.get(i);
+                statement.setLong(1, revision.getNoteId());
+                statement.setInt(2, revision.getRevision());
+                statement.setBoolean(3, revision.isSnapshot());
+                statement.setObject(4, revision.getEditOffset(), Types.INTEGER);
+                statement.setObject(5, revision.getEditLength(), Types.INTEGER);
+                statement.setString(6, revision.getText());
+                statement.setString(7, revision.getTitle());
+                statement.setString(8, revision.getEditedBy());
+                statement.setObject(9, now);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return revisions.size();
+            }
+        });
+    }
+
+    @Transactional(readOnly = true)
+    public List<Map<String, Object>> listRevisions(Long noteId) {
+        List<Map<String, Object>> revisions = new ArrayList<>();
+        for (Object[] row : revisionRepository.findSummariesByNoteId(noteId)) {
+            Map<String, Object> revision = new HashMap<>();
+            revision.put("revision", row[0]);
+            revision.put("title", row[1]);
+            revision.put("snapshot", row[2]);
+            revision.put("editedBy", row[3]);
+            revision.put("createdAt", row[4]);
+            revisions.add(revision);
+        }
+        return revisions;
+    }
+
+    @Transactional(readOnly = true)
+    public Map<String, Object> getRevision(Long noteId, int revision) {
+        NoteRevision base = revisionRepository
+                .findFirstByNoteIdAndSnapshotTrueAndRevisionLessThanEqualOrderByRevisionDesc(noteId, revision)
+                .orElseThrow(() -> new RuntimeException("Revision not found"));
+
+        String content = base.getText();
+        NoteRevision current = base;
+        if (base.getRevision() < revision) {
+            for (NoteRevision next : revisionRepository.findByNoteIdAndRevisionBetweenOrderByRevisionAsc(noteId, base.getRevision() + 1, revision)) {
+                content = replay(content, next);
+                current = next;
+            }
+        }
+        if (current.getRevision() != revision) {
+            throw new RuntimeException("Revision not found");
+        }
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("revision", current.getRevision());
+        response.put("title", current.getTitle());
+        response.put("content", content);
+        response.put("editedBy", current.getEditedBy());
+        response.put("createdAt", current.getCreatedAt());
+        return response;
+    }
+
+    // Collapses everything older than the newest `keep` revisions into a single snapshot
+    public void compact(Long noteId, int keep) {
+        Integer latest = revisionRepository.findLatestRevision(noteId);
+        if (latest == null || latest <= keep) {
+            return;
+        }
+
+        int cutoff = latest - keep + 1;
+        Map<String, Object> state = getRevision(noteId, cutoff);
+        NoteRevision cutoffRevision = revisionRepository.findByNoteIdAndRevisionBetweenOrderByRevisionAsc(noteId, cutoff, cutoff).get(0);
+        if (!cutoffRevision.isSnapshot()) {
+            cutoffRevision.setSnapshot(true);
+            cutoffRevision.setEditOffset(null);
+            cutoffRevision.setEditLength(null);
+            cutoffRevision.setText((String) state.get("content"));
+            revisionRepository.save(cutoffRevision);
+        }
+        revisionRepository.deleteByNoteIdAndRevisionLessThan(noteId, cutoff);
+    }
+
+    private String replay(String content, NoteRevision revision) {
+        if (revision.isSnapshot()) {
+            return revision.getText();
+        }
+        ContentEdit edit = new ContentEdit();
+        edit.setOffset(revision.getEditOffset());
+        edit.setLength(revision.getEditLength());
+        edit.setText(revision.getText());
+        return ContentPatcher.apply(content, List.of(edit));
+    }
+}
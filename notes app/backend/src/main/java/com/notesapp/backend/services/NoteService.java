@@ -1,24 +1,54 @@
 package com.notesapp.backend.services;
 
+import com.notesapp.backend.config.ShardContext;
+import com.notesapp.backend.config.ShardRegistry;
+import com.notesapp.backend.dto.NotePatchRequest;
 import com.notesapp.backend.entities.Note;
+import com.notesapp.backend.entities.NoteContentCodec;
 import com.notesapp.backend.entities.NoteImage;
 import com.notesapp.backend.entities.ShareLink;
 import com.notesapp.backend.entities.User;
 import com.notesapp.backend.enums.AccessLevel;
+import com.notesapp.backend.exceptions.BlobStoreUnavailableException;
+import com.notesapp.backend.exceptions.VersionConflictException;
+import com.notesapp.backend.repositories.NoteOwnerWrites;
 import com.notesapp.backend.repositories.NoteRepository;
 import com.notesapp.backend.repositories.ShareLinkRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 @Service
 @Transactional
 public class NoteService {
 
+    private static final int MAX_BATCH_SIZE = 1000;
+    private static final String EDITED_BY_OWNER = "owner";
+    private static final String EDITED_BY_SHARE_LINK = "share-link";
+    private static final int IMAGE_APPEND_ATTEMPTS = 3;
+
     @Autowired
     private NoteRepository noteRepository;
 
@@ -28,6 +58,31 @@ public class NoteService {
     @Autowired
     private FileStorageService fileStorageService;
 
+    @Autowired
+    private NoteEventHub noteEventHub;
+
+    @Autowired
+    private NoteRevisionService noteRevisionService;
+
+    @Autowired
+    private ShareLinkFilter shareLinkFilter;
+
+    @Autowired
+    private ShareLinkExpiry shareLinkExpiry;
+
+    @Autowired
+    private ShareViewCounter shareViewCounter;
+
+    @Autowired
+    private InvalidationBus invalidationBus;
+
+    private final TransactionTemplate transactionTemplate;
+
+    public NoteService(PlatformTransactionManager transactionManager) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Transactional(readOnly = true)
     public List<Note> getUserNotes(User user) {
         return noteRepository.findByUserWithImages(user);
     }
@@ -40,6 +95,8 @@ public class NoteService {
             try {
                 List<String> imageUrls = fileStorageService.storeFilesInCloudinary(images);
                 note.setImageUrlsFromList(imageUrls);
+            } catch (BlobStoreUnavailableException e) {
+                throw e;
             } catch (Exception e) {
                 throw new RuntimeException("Failed to upload images to Cloudinary: " + e.getMessage());
             }
@@ -48,141 +105,445 @@ public class NoteService {
         return noteRepository.save(note);
     }
     
-    public Note addImagesToNote(Long noteId, MultipartFile[] images, User user) {
-        Note note = noteRepository.findById(noteId)
-                .orElseThrow(() -> new RuntimeException("Note not found"));
-        
-        if (!note.getUser().getId().equals(user.getId())) {
-            throw new RuntimeException("Access denied");
-        }
-        
-        if (images != null && images.length > 0) {
-            try {
-                List<String> newImageUrls = fileStorageService.storeFilesInCloudinary(images);
-                List<String> existingImageUrls = note.getImageUrls();
-                existingImageUrls.addAll(newImageUrls);
-                note.setImageUrlsFromList(existingImageUrls);
-            } catch (Exception e) {
-                throw new RuntimeException("Failed to upload images to Cloudinary: " + e.getMessage());
-            }
+    // Uploads run outside any transaction so no DB connection is held while Cloudinary is busy
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Note addImagesToNote(Long noteId, MultipartFile[] images, Long expectedVersion, User user) {
+        requireOwnership(noteId, user, expectedVersion);
+        return appendOwnedImages(noteId, user, uploadImages(images));
+    }
+    
+    // Final step of a resumable upload, with the chunks already assembled on local disk
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Note addUploadedImageToNote(Long noteId, Path file, Long expectedVersion, User user) {
+        requireOwnership(noteId, user, expectedVersion);
+        return appendOwnedImages(noteId, user, List.of(fileStorageService.storeFileInCloudinary(file)));
+    }
+    
+    @Transactional(readOnly = true)
+    public Map<String, Object> signImageUpload(Long noteId, User user) {
+        checkNoteOwner(noteId, user);
+        return fileStorageService.signDirectUpload(noteId);
+    }
+
+    // Second half of a direct upload: the bytes went straight to Cloudinary, only the verified URL comes here
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Note confirmImageUpload(Long noteId, String publicId, String assetVersion, String signature,
+                                   Long expectedVersion, User user) {
+        NoteOwnerWrites.Ownership ownership = requireOwnership(noteId, user, expectedVersion);
+        String imageUrl = fileStorageService.confirmDirectUpload(noteId, publicId, assetVersion, signature);
+        // A retried confirm must not attach the same image twice
+        if (ownership.imageUrls() != null && List.of(ownership.imageUrls().split(",")).contains(imageUrl)) {
+            return imagesOnlyNote(noteId, ownership.version(), ownership.imageUrls());
         }
-        
-        return noteRepository.save(note);
+        return appendOwnedImages(noteId, user, List.of(imageUrl));
     }
     
     public Note deleteImageFromNote(Long noteId, String imageUrl, User user) {
+        NoteOwnerWrites.UpdatedImages updated = noteRepository
+                .removeOwnedImageUrl(noteId, user.getId(), imageUrl, LocalDateTime.now())
+                .orElseThrow(() -> rejectedWrite(noteId, user, null, "Image not found in this note"));
+        
+        deleteUploadedImagesAfterCommit(List.of(imageUrl));
+        
+        Note saved = imagesOnlyNote(noteId, updated.version(), updated.imageUrls());
+        publishImages(saved);
+        return saved;
+    }
+
+    // One statement checks owner and version, writes, and returns the previous text for the revision log
+    public Note updateNote(Long noteId, String title, String content, Long expectedVersion, User user) {
+        checkTitle(title);
+        Note note = new Note();
+        note.setId(noteId);
+        note.setTitle(title);
+        note.setContent(content);
+
+        NoteOwnerWrites.UpdatedContent updated = noteRepository
+                .updateOwnedContent(noteId, user.getId(), expectedVersion, title,
+                        note.getStoredContent(), note.getStoredContentDeflated(), LocalDateTime.now())
+                .orElseThrow(() -> rejectedWrite(noteId, user, expectedVersion, "Note not found"));
+
+        String oldContent = updated.oldContentDeflated() != null
+                ? NoteContentCodec.inflate(updated.oldContentDeflated())
+                : updated.oldContent();
+        noteRevisionService.recordChange(noteId, updated.oldTitle(), oldContent, title, content, EDITED_BY_OWNER);
+
+        note.setVersion(updated.version());
+        note.setCreatedAt(updated.createdAt());
+        note.setUpdatedAt(updated.updatedAt());
+        note.setImageUrlsString(updated.imageUrls());
+        publishUpdate(note);
+        return note;
+    }
+
+    public Note patchNote(Long noteId, NotePatchRequest request, User user) {
         Note note = noteRepository.findById(noteId)
                 .orElseThrow(() -> new RuntimeException("Note not found"));
         
         if (!note.getUser().getId().equals(user.getId())) {
             throw new RuntimeException("Access denied");
         }
+
+        return applyPatch(note, request, EDITED_BY_OWNER);
+    }
+
+    // Rejects edits computed against an older version, then flushes so the response carries the new version
+    private Note applyPatch(Note note, NotePatchRequest request, String editedBy) {
+        checkExpectedVersion(note, request.getBaseVersion());
+
+        String title = request.getTitle() != null ? request.getTitle() : note.getTitle();
+        String content = request.getEdits() != null && !request.getEdits().isEmpty()
+                ? ContentPatcher.apply(note.getContent(), request.getEdits())
+                : note.getContent();
+        changeContent(note, title, content, editedBy);
+        Note saved = noteRepository.saveAndFlush(note);
         
-        List<String> imageUrls = note.getImageUrls();
-        
-        if (imageUrls.contains(imageUrl)) {
-            // Delete from Cloudinary
-            String publicId = fileStorageService.extractPublicIdFromUrl(imageUrl);
-            if (publicId != null) {
-                fileStorageService.deleteImageFromCloudinary(publicId);
-            }
-            
-            // Remove from note
-            imageUrls.remove(imageUrl);
-            note.setImageUrlsFromList(imageUrls);
-        } else {
-            throw new RuntimeException("Image not found in this note");
+        // Viewers holding baseVersion can apply the same edits instead of receiving the full content
+        noteEventHub.publish(saved.getId(), "patched", () -> {
+            Map<String, Object> event = new HashMap<>();
+            event.put("noteId", saved.getId());
+            event.put("baseVersion", request.getBaseVersion());
+            event.put("version", saved.getVersion());
+            event.put("title", saved.getTitle());
+            event.put("edits", request.getEdits());
+            event.put("updatedAt", saved.getUpdatedAt());
+            return event;
+        });
+        return saved;
+    }
+
+    // Clients that send the version they edited get 409 instead of silently overwriting a newer write.
+    // Without it, @Version still rejects writes that race inside the same read-modify-write window.
+    private void checkExpectedVersion(Note note, Long expectedVersion) {
+        if (expectedVersion != null && note.getVersion() != expectedVersion) {
+            throw new VersionConflictException(note.getVersion());
         }
-        
-        return noteRepository.save(note);
     }
 
-    public Note updateNote(Long noteId, String title, String content, User user) {
-        Note note = noteRepository.findById(noteId)
-                .orElseThrow(() -> new RuntimeException("Note not found"));
-        
-        if (!note.getUser().getId().equals(user.getId())) {
-            throw new RuntimeException("Access denied");
+    // Writes that skip the entity also skip bean validation, so the title rules are repeated here
+    private void checkTitle(String title) {
+        if (title == null || title.isBlank()) {
+            throw new RuntimeException("Title is required");
+        }
+        if (title.length() > 255) {
+            throw new RuntimeException("Title cannot exceed 255 characters");
         }
+    }
 
+    // Every title/content write goes through here so revision history sees each change.
+    // The row is locked first: recording the revision before the note update would otherwise deadlock with
+    // a writer that holds the row and waits on the same revision number.
+    private void changeContent(Note note, String title, String content, String editedBy) {
+        long currentVersion = noteRepository.lockVersion(note.getId())
+                .orElseThrow(() -> new RuntimeException("Note not found"));
+        if (currentVersion != note.getVersion()) {
+            throw new VersionConflictException(currentVersion);
+        }
+        noteRevisionService.recordChange(note.getId(), note.getTitle(), note.getContent(), title, content, editedBy);
         note.setTitle(title);
         note.setContent(content);
-        return noteRepository.save(note);
+    }
+
+    private void publishUpdate(Note note) {
+        noteEventHub.publish(note.getId(), "updated", () -> {
+            Map<String, Object> event = new HashMap<>();
+            event.put("noteId", note.getId());
+            event.put("version", note.getVersion());
+            event.put("title", note.getTitle());
+            event.put("content", note.getContent());
+            event.put("updatedAt", note.getUpdatedAt());
+            return event;
+        });
+    }
+
+    private void publishImages(Note note) {
+        noteEventHub.publish(note.getId(), "images", () -> {
+            Map<String, Object> event = new HashMap<>();
+            event.put("noteId", note.getId());
+            event.put("version", note.getVersion());
+            event.put("imageUrls", note.getImageUrls());
+            return event;
+        });
+    }
+
+    private void publishDeleted(Long noteId) {
+        invalidationBus.publish(InvalidationBus.NOTE_DELETED, noteId);
+        noteEventHub.publish(noteId, "deleted", () -> {
+            Map<String, Object> event = new HashMap<>();
+            event.put("noteId", noteId);
+            return event;
+        });
     }
 
     public void deleteNote(Long noteId, User user) {
-        Note note = noteRepository.findById(noteId)
-                .orElseThrow(() -> new RuntimeException("Note not found"));
+        NoteOwnerWrites.DeletedNote deleted = noteRepository.deleteOwned(noteId, user.getId())
+                .orElseThrow(() -> rejectedWrite(noteId, user, null, "Note not found"));
+        afterDelete(List.of(deleted));
+    }
+
+    private void afterDelete(List<NoteOwnerWrites.DeletedNote> deletedNotes) {
+        List<String> imageUrls = new ArrayList<>();
+        for (NoteOwnerWrites.DeletedNote deleted : deletedNotes) {
+            shareLinkFilter.recordDeletes(deleted.shareIds().size());
+            deleted.shareIds().forEach(shareId -> {
+                shareLinkExpiry.forget(shareId);
+                noteEventHub.closeShared(shareId);
+                invalidationBus.publish(InvalidationBus.SHARE_LINK, shareId);
+            });
+            publishDeleted(deleted.noteId());
+            if (deleted.imageUrls() != null && !deleted.imageUrls().isBlank()) {
+                imageUrls.addAll(List.of(deleted.imageUrls().split(",")));
+            }
+        }
+        deleteUploadedImagesAfterCommit(imageUrls);
+    }
+
+    // Batch operations: one transaction per request, statements grouped by hibernate.jdbc.batch_size
+    public List<Note> createNotes(List<Map<String, String>> requests, User user) {
+        checkBatchSize(requests);
         
-        if (!note.getUser().getId().equals(user.getId())) {
-            throw new RuntimeException("Access denied");
+        List<Note> notes = new ArrayList<>(requests.size());
+        for (Map<String, String> request : requests) {
+            notes.add(new Note(request.get("title"), request.get("content"), user));
         }
+        return noteRepository.saveAll(notes);
+    }
+
+    public List<Note> updateNotes(List<Map<String, Object>> requests, User user) {
+        checkBatchSize(requests);
         
-        // Delete images from Cloudinary before deleting the note
-        List<String> imageUrls = note.getImageUrls();
-        for (String imageUrl : imageUrls) {
-            String publicId = fileStorageService.extractPublicIdFromUrl(imageUrl);
-            if (publicId != null) {
-                fileStorageService.deleteImageFromCloudinary(publicId);
+        Map<Long, Map<String, Object>> requestsById = new LinkedHashMap<>();
+        for (Map<String, Object> request : requests) {
+            Object id = request.get("id");
+            if (!(id instanceof Number)) {
+                throw new RuntimeException("Each note update requires an id");
             }
+            requestsById.put(((Number) id).longValue(), request);
         }
-
-        noteRepository.delete(note);
+        
+        // Locked before loading, so the loaded state is the one the revisions are recorded against
+        lockOwnedNotes(requestsById.keySet(), user);
+        List<Note> notes = noteRepository.findAllByIdWithImages(requestsById.keySet());
+        List<NoteRevisionService.Change> changes = new ArrayList<>(notes.size());
+        for (Note note : notes) {
+            Map<String, Object> request = requestsById.get(note.getId());
+            changes.add(new NoteRevisionService.Change(note.getId(), note.getTitle(), note.getContent(),
+                    (String) request.get("title"), (String) request.get("content")));
+        }
+        // Recorded while the notes are still clean, so the revision queries never trigger an early flush
+        noteRevisionService.recordChanges(changes, EDITED_BY_OWNER);
+        for (int i = 0; i < notes.size(); i++) {
+            notes.get(i).setTitle(changes.get(i).newTitle());
+            notes.get(i).setContent(changes.get(i).newContent());
+        }
+        List<Note> saved = noteRepository.saveAll(notes);
+        saved.forEach(this::publishUpdate);
+        return saved;
     }
 
-    public ShareLink createShareLink(Long noteId, AccessLevel accessLevel, User user) {
-        Note note = noteRepository.findById(noteId)
-                .orElseThrow(() -> new RuntimeException("Note not found"));
+    // One statement removes the owned notes with their children; if any id was missing or foreign the
+    // exception rolls the whole batch back
+    public void deleteNotes(List<Long> noteIds, User user) {
+        checkBatchSize(noteIds);
         
-        if (!note.getUser().getId().equals(user.getId())) {
-            throw new RuntimeException("Access denied");
+        List<NoteOwnerWrites.DeletedNote> deleted = noteRepository.deleteOwnedNotes(new HashSet<>(noteIds), user.getId());
+        if (deleted.size() != new HashSet<>(noteIds).size()) {
+            Set<Long> deletedIds = new HashSet<>();
+            deleted.forEach(note -> deletedIds.add(note.noteId()));
+            Long rejected = noteIds.stream().filter(id -> !deletedIds.contains(id)).findFirst().orElseThrow();
+            throw rejectedWrite(rejected, user, null, "Note not found");
+        }
+        afterDelete(deleted);
+    }
+
+    // One statement locks the whole batch and checks it exists and belongs to the user
+    private void lockOwnedNotes(Collection<Long> noteIds, User user) {
+        List<Object[]> rows = noteRepository.lockVersions(noteIds);
+        if (rows.size() != noteIds.size()) {
+            throw new RuntimeException("Note not found");
+        }
+        for (Object[] row : rows) {
+            if (((Number) row[1]).longValue() != user.getId()) {
+                throw new RuntimeException("Access denied");
+            }
         }
+    }
 
-        String shareId = UUID.randomUUID().toString();
-        ShareLink shareLink = new ShareLink(shareId, accessLevel, note);
-        return shareLinkRepository.save(shareLink);
+    private void checkBatchSize(List<?> items) {
+        if (items == null || items.isEmpty()) {
+            throw new RuntimeException("Batch is empty");
+        }
+        if (items.size() > MAX_BATCH_SIZE) {
+            throw new RuntimeException("Batch cannot exceed " + MAX_BATCH_SIZE + " notes");
+        }
     }
 
+    public ShareLink createShareLink(Long noteId, AccessLevel accessLevel, Long ttlSeconds, Integer maxViews, User user) {
+        if (ttlSeconds != null && ttlSeconds <= 0) {
+            throw new RuntimeException("Expiry must be a positive number of seconds");
+        }
+        if (maxViews != null && maxViews <= 0) {
+            throw new RuntimeException("Max views must be a positive number");
+        }
+
+        // Encodes the shard the note lives on, so public lookups are routed without a directory query
+        UUID shareId = ShardRegistry.newShareId(ShardContext.current());
+        ShareLink shareLink = new ShareLink(shareId, accessLevel, null);
+        if (ttlSeconds != null) {
+            shareLink.setExpiresAt(LocalDateTime.now().plusSeconds(ttlSeconds));
+        }
+        shareLink.setMaxViews(maxViews);
+        
+        // The insert selects the note row by id and owner, so a foreign note inserts nothing
+        Long id = noteRepository.insertOwnedShareLink(noteId, user.getId(), shareId, accessLevel,
+                        shareLink.getExpiresAt(), maxViews)
+                .orElseThrow(() -> rejectedWrite(noteId, user, null, "Note not found"));
+        shareLink.setId(id);
+        shareLinkFilter.add(shareId);
+        shareLinkExpiry.register(shareId, shareLink.getExpiresAt(), maxViews, 0);
+        invalidationBus.publish(InvalidationBus.SHARE_LINK, shareId);
+        return shareLink;
+    }
+
+    @Transactional(readOnly = true)
     public List<ShareLink> getNoteShareLinks(Long noteId, User user) {
-        Note note = noteRepository.findById(noteId)
+        List<ShareLink> shareLinks = shareLinkRepository.findByNoteIdAndOwner(noteId, user.getId());
+        // No rows may just mean no links yet
+        if (shareLinks.isEmpty()) {
+            checkNoteOwner(noteId, user);
+        }
+        shareLinks.forEach(shareLink -> shareLink.setUnflushedViews(shareViewCounter.getPending(shareLink.getId())));
+        return shareLinks;
+    }
+
+    @Transactional(readOnly = true)
+    public void checkNoteOwner(Long noteId, User user) {
+        requireOwnership(noteId, user, null);
+    }
+
+    private NoteOwnerWrites.Ownership requireOwnership(Long noteId, User user, Long expectedVersion) {
+        NoteOwnerWrites.Ownership ownership = noteRepository.findOwnership(noteId)
                 .orElseThrow(() -> new RuntimeException("Note not found"));
         
-        if (!note.getUser().getId().equals(user.getId())) {
+        if (ownership.userId() != user.getId()) {
             throw new RuntimeException("Access denied");
         }
+        if (expectedVersion != null && ownership.version() != expectedVersion) {
+            throw new VersionConflictException(ownership.version());
+        }
+        return ownership;
+    }
 
-        return shareLinkRepository.findByNote(note);
+    // An owner-checked write matched no row; one lookup tells which condition failed
+    private RuntimeException rejectedWrite(Long noteId, User user, Long expectedVersion, String otherwise) {
+        try {
+            requireOwnership(noteId, user, expectedVersion);
+        } catch (RuntimeException e) {
+            return e;
+        }
+        return new RuntimeException(otherwise);
     }
 
-    public Note getSharedNote(String shareId) {
-        ShareLink shareLink = shareLinkRepository.findByShareIdWithNoteAndImages(shareId)
-                .orElseThrow(() -> new RuntimeException("Shared note not found"));
-        
-        return shareLink.getNote();
+    @Transactional(readOnly = true)
+    public List<Map<String, Object>> getNoteRevisions(Long noteId, User user) {
+        checkNoteOwner(noteId, user);
+        return noteRevisionService.listRevisions(noteId);
+    }
+
+    @Transactional(readOnly = true)
+    public Map<String, Object> getNoteRevision(Long noteId, int revision, User user) {
+        checkNoteOwner(noteId, user);
+        return noteRevisionService.getRevision(noteId, revision);
+    }
+
+    @Transactional(readOnly = true)
+    public Long getSharedNoteId(String shareId) {
+        return getSharedLink(shareId).getNote().getId();
+    }
+
+    // The link with its note but not the note's images
+    @Transactional(readOnly = true)
+    public ShareLink getSharedLink(String shareId) {
+        return findSharedLink(shareId, shareLinkRepository::findByShareIdWithNote);
+    }
+
+    // One query for the note, its images and the link's access level
+    @Transactional(readOnly = true)
+    public ShareLink getSharedNoteLink(String shareId) {
+        return findSharedLink(shareId, shareLinkRepository::findByShareIdWithNoteAndImages);
+    }
+
+    // Capped links count the view in the same statement that enforces the cap, so only they need the primary;
+    // all others are counted in memory and flushed in batches
+    public void recordSharedView(ShareLink shareLink) {
+        if (shareLink.getMaxViews() != null) {
+            if (shareLinkRepository.consumeView(shareLink.getId()) == 0) {
+                shareLinkExpiry.expireNow(shareLink.getShareId());
+                throw new RuntimeException("Share link has expired");
+            }
+            shareLinkExpiry.recordView(shareLink.getShareId());
+        } else {
+            shareViewCounter.increment(shareLink.getId());
+        }
+    }
+
+    // Malformed ids and ids the filter has never seen are rejected before reaching the database
+    private UUID toShareId(String shareId) {
+        UUID id;
+        try {
+            id = UUID.fromString(shareId);
+        } catch (IllegalArgumentException | NullPointerException e) {
+            throw new RuntimeException("Shared note not found");
+        }
+        if (!shareLinkFilter.mightContain(id)) {
+            throw new RuntimeException("Shared note not found");
+        }
+        return id;
     }
 
-    public Note updateSharedNote(String shareId, String title, String content) {
-        ShareLink shareLink = shareLinkRepository.findByShareIdWithNoteAndImages(shareId)
+    private ShareLink findSharedLink(String shareId, Function<UUID, Optional<ShareLink>> finder) {
+        UUID id = toShareId(shareId);
+        if (shareLinkExpiry.isExpired(id)) {
+            throw new RuntimeException("Share link has expired");
+        }
+
+        ShareLink shareLink = finder.apply(id)
                 .orElseThrow(() -> new RuntimeException("Shared note not found"));
+        // Links created on another instance are not in the local expiry metadata yet
+        if (shareLink.isExpired()) {
+            shareLinkExpiry.expireNow(id);
+            throw new RuntimeException("Share link has expired");
+        }
+        return shareLink;
+    }
+
+    public Note updateSharedNote(String shareId, String title, String content, Long expectedVersion) {
+        ShareLink shareLink = findSharedLink(shareId, shareLinkRepository::findByShareIdWithNoteAndImages);
         
         if (shareLink.getAccessLevel() != AccessLevel.EDITOR) {
             throw new RuntimeException("No edit permission");
         }
 
         Note note = shareLink.getNote();
-        note.setTitle(title);
-        note.setContent(content);
-        return noteRepository.save(note);
+        checkExpectedVersion(note, expectedVersion);
+        changeContent(note, title, content, EDITED_BY_SHARE_LINK);
+        Note saved = noteRepository.saveAndFlush(note);
+        publishUpdate(saved);
+        return saved;
     }
 
-    public AccessLevel getShareAccessLevel(String shareId) {
-        ShareLink shareLink = shareLinkRepository.findByShareId(shareId)
-                .orElseThrow(() -> new RuntimeException("Share link not found"));
-        return shareLink.getAccessLevel();
+    public Note patchSharedNote(String shareId, NotePatchRequest request) {
+        ShareLink shareLink = findSharedLink(shareId, shareLinkRepository::findByShareIdWithNote);
+        
+        if (shareLink.getAccessLevel() != AccessLevel.EDITOR) {
+            throw new RuntimeException("No edit permission");
+        }
+
+        return applyPatch(shareLink.getNote(), request, EDITED_BY_SHARE_LINK);
     }
-    
+
     public void deleteShareLink(String shareId, User user) {
-        ShareLink shareLink = shareLinkRepository.findByShareIdWithNote(shareId)
+        ShareLink shareLink = shareLinkRepository.findByShareIdWithNote(toShareId(shareId))
                 .orElseThrow(() -> new RuntimeException("Share link not found"));
         
         // Check if the user owns the note associated with this share link
@@ -191,35 +552,125 @@ public class NoteService {
         }
         
         shareLinkRepository.delete(shareLink);
+        shareLinkFilter.recordDeletes(1);
+        shareLinkExpiry.forget(shareLink.getShareId());
+        noteEventHub.closeShared(shareLink.getShareId());
+        invalidationBus.publish(InvalidationBus.SHARE_LINK, shareLink.getShareId());
     }
     
-    public Note addImagesToSharedNote(String shareId, MultipartFile[] images) {
-        ShareLink shareLink = shareLinkRepository.findByShareIdWithNoteAndImages(shareId)
-                .orElseThrow(() -> new RuntimeException("Shared note not found"));
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Note addImagesToSharedNote(String shareId, MultipartFile[] images, Long expectedVersion) {
+        Supplier<Note> loadNote = () -> {
+            ShareLink shareLink = findSharedLink(shareId, shareLinkRepository::findByShareIdWithNote);
+            
+            if (shareLink.getAccessLevel() != AccessLevel.EDITOR) {
+                throw new RuntimeException("No edit permission");
+            }
+            return shareLink.getNote();
+        };
         
-        if (shareLink.getAccessLevel() != AccessLevel.EDITOR) {
-            throw new RuntimeException("No edit permission");
+        checkExpectedVersion(loadNote.get(), expectedVersion);
+        return appendImages(loadNote, uploadImages(images));
+    }
+    
+    private List<String> uploadImages(MultipartFile[] images) {
+        if (images == null || images.length == 0) {
+            return new ArrayList<>();
         }
-        
-        Note note = shareLink.getNote();
-        
-        if (images != null && images.length > 0) {
+        try {
+            return fileStorageService.storeFilesInCloudinary(images);
+        } catch (BlobStoreUnavailableException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to upload images to Cloudinary: " + e.getMessage());
+        }
+    }
+    
+    // Appending URLs commutes with other writes, so an optimistic-lock failure is retried on a fresh read.
+    // If the note cannot be updated at all the uploads are removed again rather than orphaned.
+    private Note appendImages(Supplier<Note> loadNote, List<String> newImageUrls) {
+        for (int attempt = 1; ; attempt++) {
             try {
-                List<String> newImageUrls = fileStorageService.storeFilesInCloudinary(images);
-                List<String> existingImageUrls = note.getImageUrls();
-                existingImageUrls.addAll(newImageUrls);
-                note.setImageUrlsFromList(existingImageUrls);
-            } catch (Exception e) {
-                throw new RuntimeException("Failed to upload images to Cloudinary: " + e.getMessage());
+                return transactionTemplate.execute(status -> {
+                    Note note = loadNote.get();
+                    List<String> imageUrls = note.getImageUrls();
+                    imageUrls.addAll(newImageUrls);
+                    note.setImageUrlsFromList(imageUrls);
+                    
+                    Note saved = noteRepository.saveAndFlush(note);
+                    publishImages(saved);
+                    return saved;
+                });
+            } catch (ObjectOptimisticLockingFailureException e) {
+                if (attempt < IMAGE_APPEND_ATTEMPTS) {
+                    continue;
+                }
+                deleteUploadedImages(newImageUrls);
+                throw e;
+            } catch (RuntimeException e) {
+                deleteUploadedImages(newImageUrls);
+                throw e;
             }
         }
-        
-        return noteRepository.save(note);
+    }
+    
+    // Appending in SQL needs no retry: the statement reads and writes image_urls under the same row lock
+    private Note appendOwnedImages(Long noteId, User user, List<String> newImageUrls) {
+        if (newImageUrls.isEmpty()) {
+            NoteOwnerWrites.Ownership ownership = requireOwnership(noteId, user, null);
+            return imagesOnlyNote(noteId, ownership.version(), ownership.imageUrls());
+        }
+        try {
+            NoteOwnerWrites.UpdatedImages updated = transactionTemplate.execute(status -> noteRepository
+                    .appendOwnedImageUrls(noteId, user.getId(), String.join(",", newImageUrls), LocalDateTime.now())
+                    .orElseThrow(() -> rejectedWrite(noteId, user, null, "Note not found")));
+            Note saved = imagesOnlyNote(noteId, updated.version(), updated.imageUrls());
+            publishImages(saved);
+            return saved;
+        } catch (RuntimeException e) {
+            deleteUploadedImages(newImageUrls);
+            throw e;
+        }
+    }
+
+    // Enough of a note for image responses and events, built from the columns a statement returned
+    private Note imagesOnlyNote(Long noteId, long version, String imageUrls) {
+        Note note = new Note();
+        note.setId(noteId);
+        note.setVersion(version);
+        note.setImageUrlsString(imageUrls);
+        return note;
+    }
+    
+    private void deleteUploadedImages(List<String> imageUrls) {
+        for (String imageUrl : imageUrls) {
+            String publicId = fileStorageService.extractPublicIdFromUrl(imageUrl);
+            if (publicId != null) {
+                fileStorageService.deleteImageFromCloudinary(publicId);
+            }
+        }
+    }
+
+    // Images a note stops referencing are destroyed only once that write has committed; a rolled-back delete
+    // must not leave the note pointing at missing images
+    private void deleteUploadedImagesAfterCommit(List<String> imageUrls) {
+        if (imageUrls.isEmpty()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    deleteUploadedImages(imageUrls);
+                }
+            });
+        } else {
+            deleteUploadedImages(imageUrls);
+        }
     }
     
     public Note deleteImageFromSharedNote(String shareId, String imageUrl) {
-        ShareLink shareLink = shareLinkRepository.findByShareIdWithNoteAndImages(shareId)
-                .orElseThrow(() -> new RuntimeException("Shared note not found"));
+        ShareLink shareLink = findSharedLink(shareId, shareLinkRepository::findByShareIdWithNoteAndImages);
         
         if (shareLink.getAccessLevel() != AccessLevel.EDITOR) {
             throw new RuntimeException("No edit permission");
@@ -229,11 +680,7 @@ public class NoteService {
         List<String> imageUrls = note.getImageUrls();
         
         if (imageUrls.contains(imageUrl)) {
-            // Delete from Cloudinary
-            String publicId = fileStorageService.extractPublicIdFromUrl(imageUrl);
-            if (publicId != null) {
-                fileStorageService.deleteImageFromCloudinary(publicId);
-            }
+            deleteUploadedImagesAfterCommit(List.of(imageUrl));
             
             // Remove from note
             imageUrls.remove(imageUrl);
@@ -242,6 +689,8 @@ public class NoteService {
             throw new RuntimeException("Image not found in this note");
         }
         
-        return noteRepository.save(note);
+        Note saved = noteRepository.save(note);
+        publishImages(saved);
+        return saved;
     }
 }
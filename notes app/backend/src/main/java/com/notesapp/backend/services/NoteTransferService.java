@@ -0,0 +1,194 @@
+package com.notesapp.backend.services;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.notesapp.backend.entities.Note;
+import com.notesapp.backend.entities.User;
+import com.notesapp.backend.repositories.NoteRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+// Streams a user's notes in and out as NDJSON (one note per line) or a ZIP holding
+// notes.ndjson plus an images.ndjson manifest. Memory use does not grow with the account size.
+@Service
+public class NoteTransferService {
+
+    public static final String NOTES_ENTRY = "notes.ndjson";
+    public static final String IMAGES_ENTRY = "images.ndjson";
+
+    private static final int IMPORT_BATCH_SIZE = 500;
+
+    @Autowired
+    private NoteRepository noteRepository;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final TransactionTemplate readTransaction;
+    private final TransactionTemplate writeTransaction;
+
+    public NoteTransferService(PlatformTransactionManager transactionManager) {
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+        this.writeTransaction = new TransactionTemplate(transactionManager);
+    }
+
+    public void exportNdjson(User user, OutputStream out) throws IOException {
+        writeNotes(user, out);
+        out.flush();
+    }
+
+    public void exportZip(User user, OutputStream out) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(out);
+
+        zip.putNextEntry(new ZipEntry(NOTES_ENTRY));
+        writeNotes(user, zip);
+        zip.closeEntry();
+
+        zip.putNextEntry(new ZipEntry(IMAGES_ENTRY));
+        writeImageManifest(user, zip);
+        zip.closeEntry();
+
+        zip.finish();
+        out.flush();
+    }
+
+    public int importNdjson(InputStream in, User user) throws IOException {
+        int imported = 0;
+        List<Note> batch = new ArrayList<>(IMPORT_BATCH_SIZE);
+
+        // readValues parses one root-level object at a time, so the request body is never buffered whole
+        try (MappingIterator<Map<String, Object>> records = objectMapper.readerFor(Map.class).readValues(in)) {
+            while (records.hasNext()) {
+                batch.add(toNote(records.next(), user));
+                if (batch.size() == IMPORT_BATCH_SIZE) {
+                    imported += saveBatch(batch, imported);
+                    batch.clear();
+                }
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            imported += saveBatch(batch, imported);
+        }
+        return imported;
+    }
+
+    public int importZip(InputStream in, User user) throws IOException {
+        ZipInputStream zip = new ZipInputStream(in);
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            if (NOTES_ENTRY.equals(entry.getName())) {
+                return importNdjson(zip, user);
+            }
+        }
+        throw new RuntimeException("Archive does not contain " + NOTES_ENTRY);
+    }
+
+    private void writeNotes(User user, OutputStream out) {
+        readTransaction.executeWithoutResult(status -> {
+            try (Stream<Note> notes = noteRepository.streamByUser(user)) {
+                notes.forEach(note -> {
+                    Map<String, Object> record = new LinkedHashMap<>();
+                    record.put("id", note.getId());
+                    record.put("title", note.getTitle());
+                    record.put("content", note.getContent());
+                    record.put("imageUrls", note.getImageUrls());
+                    record.put("createdAt", note.getCreatedAt());
+                    record.put("updatedAt", note.getUpdatedAt());
+                    writeLine(out, record);
+
+                    // Keep the persistence context from accumulating every exported note
+                    entityManager.detach(note);
+                });
+            }
+        });
+    }
+
+    private void writeImageManifest(User user, OutputStream out) {
+        readTransaction.executeWithoutResult(status -> {
+            try (Stream<Object[]> rows = noteRepository.streamImageUrlsByUser(user)) {
+                rows.forEach(row -> {
+                    List<Map<String, Object>> images = new ArrayList<>();
+                    for (String url : ((String) row[1]).split(",")) {
+                        Map<String, Object> image = new LinkedHashMap<>();
+                        image.put("url", url);
+                        image.put("publicId", fileStorageService.extractPublicIdFromUrl(url));
+                        images.add(image);
+                    }
+
+                    Map<String, Object> record = new LinkedHashMap<>();
+                    record.put("noteId", row[0]);
+                    record.put("images", images);
+                    writeLine(out, record);
+                });
+            }
+        });
+    }
+
+    private void writeLine(OutputStream out, Map<String, Object> record) {
+        try {
+            out.write(objectMapper.writeValueAsBytes(record));
+            out.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Image URLs in the file are never trusted: each one from our own cloud is re-uploaded as a fresh asset
+    // owned by the new note, and anything else (other hosts, legacy /api/images links) is dropped
+    private Note toNote(Map<String, Object> record, User user) {
+        Note note = new Note((String) record.get("title"), (String) record.get("content"), user);
+        if (record.get("imageUrls") instanceof List<?> urls) {
+            List<String> copies = new ArrayList<>();
+            for (Object url : urls) {
+                String copy = url instanceof String imageUrl ? fileStorageService.copyOwnImage(imageUrl) : null;
+                if (copy != null) {
+                    copies.add(copy);
+                } else {
+                    System.out.println("[NoteTransferService] Dropped image not from this account: " + url);
+                }
+            }
+            note.setImageUrlsFromList(copies);
+        }
+        return note;
+    }
+
+    // Each batch commits on its own so a large import never holds one long transaction
+    private int saveBatch(List<Note> batch, int importedSoFar) {
+        try {
+            writeTransaction.executeWithoutResult(status -> {
+                noteRepository.saveAll(batch);
+                entityManager.flush();
+                entityManager.clear();
+            });
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Import failed after " + importedSoFar + " notes: " + e.getMessage());
+        }
+        System.out.println("[NoteTransferService] Imported batch of " + batch.size() + " notes");
+        return batch.size();
+    }
+}
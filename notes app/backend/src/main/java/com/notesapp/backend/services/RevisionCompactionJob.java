@@ -0,0 +1,46 @@
+package com.notesapp.backend.services;
+
+import com.notesapp.backend.config.ShardRegistry;
+import com.notesapp.backend.repositories.NoteRevisionRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+// Bounds revision storage per note; each note is compacted in its own transaction
+@Service
+public class RevisionCompactionJob {
+
+    @Autowired
+    private NoteRevisionRepository revisionRepository;
+
+    @Autowired
+    private NoteRevisionService revisionService;
+
+    @Autowired
+    private ShardRegistry shardRegistry;
+
+    @Value("${notes.revisions.keep:200}")
+    private int keep;
+
+    @Scheduled(fixedDelayString = "${notes.revisions.compaction-interval-ms:3600000}", initialDelay = 120000)
+    public void compactRevisions() {
+        shardRegistry.forEachShard(this::compactShard);
+    }
+
+    private void compactShard(int shard) {
+        List<Long> noteIds = revisionRepository.findNoteIdsWithMoreRevisionsThan(keep);
+        for (Long noteId : noteIds) {
+            try {
+                revisionService.compact(noteId, keep);
+            } catch (RuntimeException e) {
+                System.err.println("[RevisionCompactionJob] Failed to compact note " + noteId + ": " + e.getMessage());
+            }
+        }
+        if (!noteIds.isEmpty()) {
+            System.out.println("[RevisionCompactionJob] Compacted revisions of " + noteIds.size() + " notes on shard " + shard);
+        }
+    }
+}
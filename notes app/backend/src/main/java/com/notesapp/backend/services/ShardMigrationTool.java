@@ -0,0 +1,325 @@
+package com.notesapp.backend.services;
+
+import com.notesapp.backend.config.ShardRoutingDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Blob;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Moves one user's notes, images, revisions, share links and feedback to another shard while the rest of the
+// application keeps serving. Run as a one-off process against the same configuration, e.g.
+//   java -jar backend.jar --spring.main.web-application-type=none --notes.reshard.user-id=42 --notes.reshard.target-shard=2
+// The user can read throughout; their writes, and writes through their share links, get a 503 from the moment the
+// migrating flag is set until it is cleared.
+@Component
+@ConditionalOnProperty("notes.reshard.user-id")
+public class ShardMigrationTool implements ApplicationRunner {
+
+    private static final int BATCH_SIZE = 500;
+    private static final Pattern IMAGE_URL = Pattern.compile("/api/images/(\\d+)");
+
+    private static final String USER_NOTES = "SELECT * FROM notes WHERE user_id = ?";
+    private static final String USER_REVISIONS = "SELECT r.* FROM note_revisions r JOIN notes n ON n.id = r.note_id WHERE n.user_id = ?";
+    private static final String USER_SHARE_LINKS = "SELECT s.* FROM share_links s JOIN notes n ON n.id = s.note_id WHERE n.user_id = ?";
+    private static final String USER_FEEDBACK = "SELECT * FROM user_feedback WHERE user_id = ?";
+
+    private final ConfigurableApplicationContext applicationContext;
+    private final InvalidationBus invalidationBus;
+    private final ShardRoutingDataSource shards;
+    private final long userId;
+    private final int targetShard;
+    private final long drainMillis;
+    private final long forwardsRefreshMillis;
+
+    public ShardMigrationTool(
+            ConfigurableApplicationContext applicationContext,
+            InvalidationBus invalidationBus,
+            DataSource dataSource,
+            @Value("${notes.reshard.user-id}") long userId,
+            @Value("${notes.reshard.target-shard}") int targetShard,
+            @Value("${notes.reshard.drain-ms:5000}") long drainMillis,
+            @Value("${notes.shards.forwards-refresh-ms:60000}") long forwardsRefreshMillis
+    ) throws SQLException {
+        if (!dataSource.isWrapperFor(ShardRoutingDataSource.class)) {
+            throw new IllegalStateException("Resharding needs notes.shards.urls to be configured");
+        }
+        this.applicationContext = applicationContext;
+        this.invalidationBus = invalidationBus;
+        this.shards = dataSource.unwrap(ShardRoutingDataSource.class);
+        this.userId = userId;
+        this.targetShard = targetShard;
+        this.drainMillis = drainMillis;
+        this.forwardsRefreshMillis = forwardsRefreshMillis;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        int exitCode = 0;
+        try {
+            migrate();
+        } catch (Exception e) {
+            exitCode = 1;
+            System.err.println("[ShardMigrationTool] Moving user " + userId + " failed: " + e.getMessage());
+        }
+        int code = exitCode;
+        System.exit(SpringApplication.exit(applicationContext, () -> code));
+    }
+
+    private void migrate() throws Exception {
+        if (targetShard < 0 || targetShard >= shards.getShardCount()) {
+            throw new IllegalArgumentException("Target shard must be between 0 and " + (shards.getShardCount() - 1));
+        }
+        DataSource directory = shards.getShard(0);
+        int sourceShard = currentShard(directory);
+        if (sourceShard == targetShard) {
+            System.out.println("[ShardMigrationTool] User " + userId + " already lives on shard " + targetShard);
+            return;
+        }
+
+        setMigrating(directory, true);
+        boolean switched = false;
+        try {
+            // In-flight requests and write-behind autosaves on running nodes land on the source before copying
+            Thread.sleep(drainMillis);
+
+            List<UUID> shareIds;
+            try (Connection source = shards.getShard(sourceShard).getConnection();
+                 Connection target = shards.getShard(targetShard).getConnection()) {
+                source.setAutoCommit(false);
+                source.setReadOnly(true);
+                target.setAutoCommit(false);
+                try {
+                    shareIds = copy(source, target);
+                    target.commit();
+                } catch (Exception e) {
+                    target.rollback();
+                    throw e;
+                } finally {
+                    source.rollback();
+                }
+            }
+
+            switchShard(directory, shareIds);
+            switched = true;
+            invalidationBus.publish(InvalidationBus.USER, userId);
+            invalidationBus.publish(InvalidationBus.SHARE_FORWARDS, targetShard);
+            System.out.println("[ShardMigrationTool] User " + userId + " now reads and writes shard " + targetShard);
+
+            // Nodes that missed the event keep routing the user's public links to the source until their periodic reload
+            Thread.sleep(forwardsRefreshMillis + drainMillis);
+            deleteFromSource(shards.getShard(sourceShard));
+        } finally {
+            setMigrating(directory, false);
+            if (!switched) {
+                System.err.println("[ShardMigrationTool] User " + userId + " stays on shard " + sourceShard);
+            }
+        }
+        System.out.println("[ShardMigrationTool] Moved user " + userId + " from shard " + sourceShard + " to shard " + targetShard);
+    }
+
+    private List<UUID> copy(Connection source, Connection target) throws SQLException {
+        int notes = copyRows(source, target, "notes", USER_NOTES);
+        Map<Long, Long> imageIds = copyImages(source, target);
+        rewriteImageUrls(target, imageIds);
+        int revisions = copyRows(source, target, "note_revisions", USER_REVISIONS);
+        int shareLinks = copyRows(source, target, "share_links", USER_SHARE_LINKS);
+        int feedback = copyRows(source, target, "user_feedback", USER_FEEDBACK);
+        System.out.println("[ShardMigrationTool] Copied " + notes + " notes, " + imageIds.size() + " images, "
+                + revisions + " revisions, " + shareLinks + " share links and " + feedback + " feedback entries");
+
+        List<UUID> shareIds = new ArrayList<>();
+        try (PreparedStatement query = target.prepareStatement(
+                "SELECT s.share_id FROM share_links s JOIN notes n ON n.id = s.note_id WHERE n.user_id = ?")) {
+            query.setLong(1, userId);
+            try (ResultSet rs = query.executeQuery()) {
+                while (rs.next()) {
+                    shareIds.add(rs.getObject(1, UUID.class));
+                }
+            }
+        }
+        return shareIds;
+    }
+
+    // Ids are kept: every shard hands out its own id range, so they cannot collide on the target
+    private int copyRows(Connection source, Connection target, String table, String select) throws SQLException {
+        try (PreparedStatement query = source.prepareStatement(select)) {
+            query.setFetchSize(BATCH_SIZE);
+            query.setLong(1, userId);
+            try (ResultSet rs = query.executeQuery()) {
+                ResultSetMetaData meta = rs.getMetaData();
+                int columnCount = meta.getColumnCount();
+                List<String> columns = new ArrayList<>();
+                for (int i = 1; i <= columnCount; i++) {
+                    columns.add(meta.getColumnName(i));
+                }
+                String insert = "INSERT INTO " + table + " (" + String.join(", ", columns) + ") VALUES ("
+                        + String.join(", ", columns.stream().map(column -> "?").toList()) + ")";
+
+                int copied = 0;
+                try (PreparedStatement statement = target.prepareStatement(insert)) {
+                    while (rs.next()) {
+                        for (int i = 1; i <= columnCount; i++) {
+                            Object value = rs.getObject(i);
+                            if (value == null) {
+                                statement.setNull(i, meta.getColumnType(i));
+                            } else {
+                                statement.setObject(i, value);
+                            }
+                        }
+                        statement.addBatch();
+                        if (++copied % BATCH_SIZE == 0) {
+                            statement.executeBatch();
+                        }
+                    }
+                    statement.executeBatch();
+                }
+                return copied;
+            }
+        }
+    }
+
+    // image_data is a large object, so each image is streamed into a new one on the target and gets a new id
+    private Map<Long, Long> copyImages(Connection source, Connection target) throws SQLException {
+        Map<Long, Long> newIds = new HashMap<>();
+        try (PreparedStatement query = source.prepareStatement("SELECT i.id, i.image_name, i.image_type, i.note_id, i.image_data "
+                + "FROM note_images i JOIN notes n ON n.id = i.note_id WHERE n.user_id = ?");
+             PreparedStatement insert = target.prepareStatement("INSERT INTO note_images (image_name, image_type, note_id, image_data) "
+                     + "VALUES (?, ?, ?, ?) RETURNING id")) {
+            query.setFetchSize(1);
+            query.setLong(1, userId);
+            try (ResultSet rs = query.executeQuery()) {
+                while (rs.next()) {
+                    Blob data = rs.getBlob(5);
+                    insert.setString(1, rs.getString(2));
+                    insert.setString(2, rs.getString(3));
+                    insert.setLong(3, rs.getLong(4));
+                    insert.setBlob(4, data.getBinaryStream(), data.length());
+                    try (ResultSet inserted = insert.executeQuery()) {
+                        inserted.next();
+                        newIds.put(rs.getLong(1), inserted.getLong(1));
+                    }
+                }
+            }
+        }
+        return newIds;
+    }
+
+    private void rewriteImageUrls(Connection target, Map<Long, Long> imageIds) throws SQLException {
+        if (imageIds.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement query = target.prepareStatement(
+                "SELECT id, image_urls FROM notes WHERE user_id = ? AND image_urls LIKE '%/api/images/%'");
+             PreparedStatement update = target.prepareStatement("UPDATE notes SET image_urls = ? WHERE id = ?")) {
+            query.setLong(1, userId);
+            try (ResultSet rs = query.executeQuery()) {
+                while (rs.next()) {
+                    Matcher matcher = IMAGE_URL.matcher(rs.getString(2));
+                    StringBuilder rewritten = new StringBuilder();
+                    while (matcher.find()) {
+                        Long newId = imageIds.get(Long.parseLong(matcher.group(1)));
+                        matcher.appendReplacement(rewritten, newId != null ? "/api/images/" + newId : matcher.group());
+                    }
+                    matcher.appendTail(rewritten);
+                    update.setString(1, rewritten.toString());
+                    update.setLong(2, rs.getLong(1));
+                    update.addBatch();
+                }
+            }
+            update.executeBatch();
+        }
+    }
+
+    // One transaction on the directory: the user and their public links switch together
+    private void switchShard(DataSource directory, List<UUID> shareIds) throws SQLException {
+        try (Connection connection = directory.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement user = connection.prepareStatement("UPDATE users SET shard = ? WHERE id = ?");
+                 PreparedStatement forward = connection.prepareStatement("INSERT INTO share_link_forwards (share_id, shard) VALUES (?, ?) "
+                         + "ON CONFLICT (share_id) DO UPDATE SET shard = EXCLUDED.shard")) {
+                user.setInt(1, targetShard);
+                user.setLong(2, userId);
+                user.executeUpdate();
+                for (UUID shareId : shareIds) {
+                    forward.setObject(1, shareId);
+                    forward.setInt(2, targetShard);
+                    forward.addBatch();
+                }
+                forward.executeBatch();
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+    }
+
+    private void deleteFromSource(DataSource source) throws SQLException {
+        String userNotes = "SELECT id FROM notes WHERE user_id = ?";
+        List<String> deletes = List.of(
+                "SELECT lo_unlink(image_data) FROM note_images WHERE note_id IN (" + userNotes + ")",
+                "DELETE FROM note_images WHERE note_id IN (" + userNotes + ")",
+                "DELETE FROM share_links WHERE note_id IN (" + userNotes + ")",
+                "DELETE FROM note_revisions WHERE note_id IN (" + userNotes + ")",
+                "DELETE FROM notes WHERE user_id = ?",
+                "DELETE FROM user_feedback WHERE user_id = ?");
+
+        try (Connection connection = source.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                for (String sql : deletes) {
+                    try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                        statement.setLong(1, userId);
+                        statement.execute();
+                    }
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+    }
+
+    private int currentShard(DataSource directory) throws SQLException {
+        try (Connection connection = directory.getConnection();
+             PreparedStatement query = connection.prepareStatement("SELECT shard FROM users WHERE id = ?")) {
+            query.setLong(1, userId);
+            try (ResultSet rs = query.executeQuery()) {
+                if (!rs.next()) {
+                    throw new IllegalArgumentException("User " + userId + " not found");
+                }
+                return rs.getInt(1);
+            }
+        }
+    }
+
+    private void setMigrating(DataSource directory, boolean migrating) throws SQLException {
+        try (Connection connection = directory.getConnection();
+             PreparedStatement update = connection.prepareStatement("UPDATE users SET migrating = ? WHERE id = ?")) {
+            update.setBoolean(1, migrating);
+            update.setLong(2, userId);
+            update.executeUpdate();
+        }
+        // Running instances cache users; the flag has to reach their request filters
+        invalidationBus.publish(InvalidationBus.USER, userId);
+    }
+}
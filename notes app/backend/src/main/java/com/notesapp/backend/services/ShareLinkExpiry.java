@@ -0,0 +1,246 @@
+package com.notesapp.backend.services;
+
+import com.notesapp.backend.config.ShardContext;
+import com.notesapp.backend.config.ShardRegistry;
+import com.notesapp.backend.repositories.ShareLinkRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+// In-memory limits of share links that have a TTL or a view cap, so expired links are rejected without a query.
+// Deadlines sit in a hashed time wheel: each tick only scans its own slot, and the expired rows it finds are
+// deleted in batches, which keeps share_links and its indexes from growing with dead links.
+@Service
+public class ShareLinkExpiry {
+
+    private static final int DELETE_BATCH_SIZE = 500;
+
+    @Autowired
+    private ShareLinkRepository shareLinkRepository;
+
+    @Autowired
+    private ShareLinkFilter shareLinkFilter;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ShardRegistry shardRegistry;
+
+    @Autowired
+    private InvalidationBus invalidationBus;
+
+    @Autowired
+    private NoteEventHub noteEventHub;
+
+    private final long tickMillis;
+    private final Queue<UUID>[] wheel;
+    private final Map<UUID, Limits> limitsByShareId = new ConcurrentHashMap<>();
+    private final TransactionTemplate transactionTemplate;
+    private volatile long lastTick;
+
+    @SuppressWarnings("unchecked")
+    public ShareLinkExpiry(
+            PlatformTransactionManager transactionManager,
+            @Value("${notes.share-expiry.tick-ms:5000}") long tickMillis,
+            @Value("${notes.share-expiry.wheel-size:720}") int wheelSize
+    ) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.tickMillis = tickMillis;
+        this.wheel = new Queue[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.lastTick = System.currentTimeMillis() / tickMillis;
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        invalidationBus.subscribe(InvalidationBus.SHARE_LINK, shareId -> refresh(UUID.fromString(shareId)));
+        invalidationBus.onReset(() -> {
+            limitsByShareId.clear();
+            loadLimits();
+            // Deletes on other instances may have been missed; recheck every link someone is still watching
+            noteEventHub.getSharedSubscriptions().forEach(this::refresh);
+        });
+    }
+
+    // A link was created or deleted, possibly on another instance; its row is the truth for the filter and the limits
+    public void refresh(UUID shareId) {
+        List<Boolean> found = new ArrayList<>();
+        ShardContext.runOn(shardRegistry.shardOfShareId(shareId), () -> jdbcTemplate.query(
+                "SELECT expires_at, max_views, view_count FROM share_links WHERE share_id = ?", rs -> {
+                    Timestamp expiresAt = rs.getTimestamp(1);
+                    int maxViews = rs.getInt(2);
+                    register(shareId,
+                            expiresAt != null ? expiresAt.toLocalDateTime() : null,
+                            rs.wasNull() ? null : maxViews,
+                            rs.getLong(3));
+                    found.add(true);
+                }, shareId));
+
+        if (found.isEmpty()) {
+            forget(shareId);
+            noteEventHub.closeShared(shareId);
+            shareLinkFilter.recordDeletes(1);
+        } else {
+            shareLinkFilter.add(shareId);
+        }
+    }
+
+    public void register(UUID shareId, LocalDateTime expiresAt, Integer maxViews, long viewCount) {
+        if (expiresAt == null && maxViews == null) {
+            return;
+        }
+        long deadline = expiresAt != null ? toMillis(expiresAt) : Long.MAX_VALUE;
+        Limits limits = new Limits(deadline, maxViews, viewCount);
+        limitsByShareId.put(shareId, limits);
+        if (maxViews != null && viewCount >= maxViews) {
+            limits.exhausted = true;
+            schedule(shareId, System.currentTimeMillis());
+        } else if (expiresAt != null) {
+            schedule(shareId, deadline);
+        }
+    }
+
+    // Hot path: a map lookup, and only links that have limits are in the map
+    public boolean isExpired(UUID shareId) {
+        Limits limits = limitsByShareId.get(shareId);
+        return limits != null && (limits.exhausted || System.currentTimeMillis() >= limits.expiresAtMillis);
+    }
+
+    // Called after a view was counted in the database; the view that uses up the cap queues the row for deletion
+    public void recordView(UUID shareId) {
+        Limits limits = limitsByShareId.get(shareId);
+        if (limits != null && limits.maxViews != null && limits.views.incrementAndGet() >= limits.maxViews) {
+            expireNow(shareId);
+        }
+    }
+
+    public void expireNow(UUID shareId) {
+        Limits limits = limitsByShareId.computeIfAbsent(shareId, id -> new Limits(Long.MAX_VALUE, null, 0));
+        limits.exhausted = true;
+        noteEventHub.closeShared(shareId);
+        schedule(shareId, System.currentTimeMillis());
+    }
+
+    public void forget(UUID shareId) {
+        limitsByShareId.remove(shareId);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadLimits() {
+        try {
+            AtomicLong loaded = new AtomicLong();
+            shardRegistry.forEachShard(shard -> jdbcTemplate.query("SELECT share_id, expires_at, max_views, view_count FROM share_links "
+                    + "WHERE expires_at IS NOT NULL OR max_views IS NOT NULL", rs -> {
+                Timestamp expiresAt = rs.getTimestamp(2);
+                int maxViews = rs.getInt(3);
+                register(rs.getObject(1, UUID.class),
+                        expiresAt != null ? expiresAt.toLocalDateTime() : null,
+                        rs.wasNull() ? null : maxViews,
+                        rs.getLong(4));
+                loaded.incrementAndGet();
+            }));
+            System.out.println("[ShareLinkExpiry] Loaded limits of " + loaded.get() + " share links");
+        } catch (Exception e) {
+            System.err.println("[ShareLinkExpiry] Could not load share link limits: " + e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedRateString = "${notes.share-expiry.tick-ms:5000}")
+    public synchronized void sweep() {
+        long now = System.currentTimeMillis();
+        long currentTick = now / tickMillis;
+        List<UUID> expired = new ArrayList<>();
+
+        // Catch up on every slot passed since the last run, at most one full turn of the wheel
+        long firstTick = Math.max(lastTick + 1, currentTick - wheel.length + 1);
+        for (long tick = firstTick; tick <= currentTick; tick++) {
+            Iterator<UUID> slot = wheel[(int) (tick % wheel.length)].iterator();
+            while (slot.hasNext()) {
+                UUID shareId = slot.next();
+                Limits limits = limitsByShareId.get(shareId);
+                if (limits == null) {
+                    slot.remove();
+                } else if (limits.exhausted || limits.expiresAtMillis <= now) {
+                    slot.remove();
+                    expired.add(shareId);
+                    // Live viewers lose access at the deadline, not when the row is eventually deleted
+                    noteEventHub.closeShared(shareId);
+                }
+                // Otherwise the deadline is in a later turn of the wheel
+            }
+        }
+        lastTick = currentTick;
+
+        // The shard of each link is known from its id, so every shard only receives deletes for its own rows
+        Map<Integer, List<UUID>> expiredByShard = new HashMap<>();
+        for (UUID shareId : expired) {
+            expiredByShard.computeIfAbsent(shardRegistry.shardOfShareId(shareId), shard -> new ArrayList<>()).add(shareId);
+        }
+        expiredByShard.forEach((shard, shareIds) -> ShardContext.runOn(shard, () -> deleteExpired(shareIds, now)));
+        if (!expired.isEmpty()) {
+            System.out.println("[ShareLinkExpiry] Removed " + expired.size() + " expired share links");
+        }
+    }
+
+    private void deleteExpired(List<UUID> shareIds, long now) {
+        for (int from = 0; from < shareIds.size(); from += DELETE_BATCH_SIZE) {
+            List<UUID> batch = shareIds.subList(from, Math.min(from + DELETE_BATCH_SIZE, shareIds.size()));
+            try {
+                Integer deleted = transactionTemplate.execute(status -> shareLinkRepository.deleteByShareIdIn(batch));
+                batch.forEach(limitsByShareId::remove);
+                shareLinkFilter.recordDeletes(deleted != null ? deleted : 0);
+            } catch (RuntimeException e) {
+                // Still rejected at lookup time; retried on the next tick
+                batch.forEach(shareId -> schedule(shareId, now));
+                System.err.println("[ShareLinkExpiry] Failed to delete " + batch.size() + " expired share links: " + e.getMessage());
+            }
+        }
+    }
+
+    private void schedule(UUID shareId, long deadlineMillis) {
+        // Never into a slot the sweeper has already passed, which would delay it by a full turn
+        long tick = Math.max(deadlineMillis / tickMillis, lastTick + 1);
+        wheel[(int) (tick % wheel.length)].add(shareId);
+    }
+
+    private static long toMillis(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static final class Limits {
+        private final long expiresAtMillis;
+        private final Integer maxViews;
+        private final AtomicLong views;
+        private volatile boolean exhausted;
+
+        Limits(long expiresAtMillis, Integer maxViews, long views) {
+            this.expiresAtMillis = expiresAtMillis;
+            this.maxViews = maxViews;
+            this.views = new AtomicLong(views);
+        }
+    }
+}
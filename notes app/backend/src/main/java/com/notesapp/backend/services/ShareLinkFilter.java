@@ -0,0 +1,208 @@
+package com.notesapp.backend.services;
+
+import com.notesapp.backend.config.ShardRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Bloom filter over live share ids of every shard, so lookups of random or deleted ids are answered without a query.
+// Bloom filters cannot remove entries: deletes only count towards the next rebuild, which reloads the
+// ids from the database. Links created on other instances arrive over the InvalidationBus, so the filter fails
+// open (every id is possibly present) until the first rebuild finishes and whenever the bus is not listening;
+// after a reconnect it stays open until a rebuild has picked up the links created during the outage.
+@Service
+public class ShareLinkFilter {
+
+    private static final long MIN_DELETES_FOR_REBUILD = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ShardRegistry shardRegistry;
+    private final InvalidationBus invalidationBus;
+    private final long expectedLinks;
+    private final double falsePositiveRate;
+    private final double rebuildDeleteRatio;
+
+    private volatile Bits current;
+    private volatile Bits building;
+    private volatile boolean ready;
+    private final AtomicInteger deletesSinceRebuild = new AtomicInteger();
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    private final AtomicBoolean rebuildRequested = new AtomicBoolean();
+
+    public ShareLinkFilter(
+            JdbcTemplate jdbcTemplate,
+            ShardRegistry shardRegistry,
+            InvalidationBus invalidationBus,
+            @Value("${notes.share-filter.expected-links:1000000}") long expectedLinks,
+            @Value("${notes.share-filter.false-positive-rate:0.01}") double falsePositiveRate,
+            @Value("${notes.share-filter.rebuild-delete-ratio:0.1}") double rebuildDeleteRatio
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.shardRegistry = shardRegistry;
+        this.invalidationBus = invalidationBus;
+        this.expectedLinks = expectedLinks;
+        this.falsePositiveRate = falsePositiveRate;
+        this.rebuildDeleteRatio = rebuildDeleteRatio;
+        this.current = Bits.sized(expectedLinks, falsePositiveRate);
+
+        // Links created on other instances while the listener was down are missing from this filter
+        invalidationBus.onReset(() -> {
+            rebuildRequested.set(true);
+            ready = false;
+            rebuildInBackground();
+        });
+    }
+
+    // A false negative would turn a valid link into a 404, so any doubt about completeness means "maybe"
+    public boolean mightContain(UUID shareId) {
+        return !ready || invalidationBus.isDisconnected() || current.mightContain(shareId);
+    }
+
+    // Registered after commit, so a rebuild that starts later is guaranteed to read the row itself
+    public void add(UUID shareId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    addNow(shareId);
+                }
+            });
+        } else {
+            addNow(shareId);
+        }
+    }
+
+    public void recordDeletes(int count) {
+        // Stale bits only cost an extra query per hit, so small tables are left to the periodic rebuild
+        long threshold = Math.max(MIN_DELETES_FOR_REBUILD, (long) (current.insertions.get() * rebuildDeleteRatio));
+        if (count > 0 && deletesSinceRebuild.addAndGet(count) > threshold) {
+            rebuildInBackground();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        rebuild();
+    }
+
+    @Scheduled(fixedDelayString = "${notes.share-filter.rebuild-interval-ms:21600000}", initialDelayString = "${notes.share-filter.rebuild-interval-ms:21600000}")
+    public void rebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            // The running scan may have started before the request's reason (a reconnect), so scan again after it
+            rebuildRequested.set(true);
+            return;
+        }
+        rebuildRequested.set(false);
+        try {
+            long startedAt = System.currentTimeMillis();
+            long count = shardRegistry.fanOut(shard -> jdbcTemplate.queryForObject("SELECT COUNT(*) FROM share_links", Long.class))
+                    .stream().mapToLong(Long::longValue).sum();
+            Bits next = Bits.sized(Math.max(expectedLinks, count * 2), falsePositiveRate);
+
+            // Links created while the tables are scanned are added to both filters
+            building = next;
+            deletesSinceRebuild.set(0);
+            shardRegistry.forEachShard(shard -> jdbcTemplate.query("SELECT share_id FROM share_links", rs -> {
+                next.add(rs.getObject(1, UUID.class));
+            }));
+            current = next;
+            building = null;
+            // A reset during the scan keeps the filter open until the follow-up scan
+            if (!rebuildRequested.get()) {
+                ready = true;
+            }
+
+            System.out.println("[ShareLinkFilter] Rebuilt with " + next.insertions.get() + " share ids, "
+                    + (next.bits.length() * 8 / 1024) + " KB, in " + (System.currentTimeMillis() - startedAt) + " ms");
+        } catch (Exception e) {
+            building = null;
+            System.err.println("[ShareLinkFilter] Rebuild failed, keeping previous filter: " + e.getMessage());
+        } finally {
+            rebuilding.set(false);
+        }
+        if (rebuildRequested.getAndSet(false)) {
+            rebuildInBackground();
+        }
+    }
+
+    private void rebuildInBackground() {
+        Thread thread = new Thread(this::rebuild, "share-filter-rebuild");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void addNow(UUID shareId) {
+        current.add(shareId);
+        Bits pending = building;
+        if (pending != null) {
+            pending.add(shareId);
+        }
+    }
+
+    private static final class Bits {
+        private final AtomicLongArray bits;
+        private final long bitCount;
+        private final int hashCount;
+        private final AtomicInteger insertions = new AtomicInteger();
+
+        private Bits(long bitCount, int hashCount) {
+            this.bits = new AtomicLongArray((int) ((bitCount + 63) >>> 6));
+            this.bitCount = (long) bits.length() << 6;
+            this.hashCount = hashCount;
+        }
+
+        static Bits sized(long expected, double falsePositiveRate) {
+            long n = Math.max(1, expected);
+            long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            int k = Math.max(1, (int) Math.round((double) m / n * Math.log(2)));
+            return new Bits(Math.min(m, (long) Integer.MAX_VALUE << 6), k);
+        }
+
+        void add(UUID id) {
+            long h1 = mix(id.getMostSignificantBits());
+            long h2 = mix(id.getLeastSignificantBits() ^ h1) | 1;
+            for (int i = 0; i < hashCount; i++) {
+                long index = Long.remainderUnsigned(h1 + i * h2, bitCount);
+                long mask = 1L << index;
+                int word = (int) (index >>> 6);
+                long value;
+                while (((value = bits.get(word)) & mask) == 0 && !bits.compareAndSet(word, value, value | mask)) {
+                    // Retry until the bit is observed set
+                }
+            }
+            insertions.incrementAndGet();
+        }
+
+        boolean mightContain(UUID id) {
+            long h1 = mix(id.getMostSignificantBits());
+            long h2 = mix(id.getLeastSignificantBits() ^ h1) | 1;
+            for (int i = 0; i < hashCount; i++) {
+                long index = Long.remainderUnsigned(h1 + i * h2, bitCount);
+                if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // MurmurHash3 finalizer keeps bit positions uniform even for ids that are not random v4 UUIDs
+        private static long mix(long h) {
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb9fe1a85ec53L;
+            h ^= h >>> 33;
+            return h;
+        }
+    }
+}
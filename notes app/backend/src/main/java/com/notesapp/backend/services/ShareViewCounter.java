@@ -0,0 +1,102 @@
+package com.notesapp.backend.services;
+
+import com.notesapp.backend.config.ShardContext;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counts shared-note views in memory and adds them to share_links.view_count in one batch per interval,
+// so the public read path never takes a row lock. Counts since the last flush are lost on a crash.
+// Each counter remembers the shard it was counted on, which is where its row lives.
+@Service
+public class ShareViewCounter {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final Map<Long, PendingViews> pendingByShareLink = new ConcurrentHashMap<>();
+
+    public void increment(Long shareLinkId) {
+        add(shareLinkId, ShardContext.current(), 1);
+    }
+
+    public long getPending(Long shareLinkId) {
+        PendingViews pending = pendingByShareLink.get(shareLinkId);
+        return pending != null ? pending.views.sum() : 0;
+    }
+
+    @Scheduled(fixedDelayString = "${notes.share-views.flush-interval-ms:10000}")
+    public void flush() {
+        Map<Integer, List<Object[]>> updatesByShard = new HashMap<>();
+        for (Long shareLinkId : pendingByShareLink.keySet()) {
+            pendingByShareLink.computeIfPresent(shareLinkId, (id, pending) -> {
+                // Subtracting what was read keeps views added meanwhile, which sumThenReset could lose
+                long views = pending.views.sum();
+                if (views > 0) {
+                    pending.views.add(-views);
+                    updatesByShard.computeIfAbsent(pending.shard, shard -> new ArrayList<>()).add(new Object[]{views, id});
+                    return pending;
+                }
+                // Idle since the last flush. Retire first, then look again: a view that still saw the adder live
+                // shows up in the second sum and keeps it; one that saw it retired takes its view back out and retries
+                pending.retired = true;
+                if (pending.views.sum() != 0) {
+                    pending.retired = false;
+                    return pending;
+                }
+                return null;
+            });
+        }
+        updatesByShard.forEach((shard, updates) -> ShardContext.runOn(shard, () -> flush(shard, updates)));
+    }
+
+    private void flush(int shard, List<Object[]> updates) {
+        try {
+            // Rows deleted in the meantime simply match nothing
+            jdbcTemplate.batchUpdate("UPDATE share_links SET view_count = view_count + ? WHERE id = ?", updates);
+        } catch (RuntimeException e) {
+            // Put the counts back so the next flush retries them
+            for (Object[] update : updates) {
+                add((Long) update[1], shard, (Long) update[0]);
+            }
+            System.err.println("[ShareViewCounter] Failed to flush " + updates.size() + " view counts: " + e.getMessage());
+        }
+    }
+
+    // Views that find the adder retired are withdrawn before retrying, so whether flush keeps or drops it,
+    // each view ends up counted exactly once
+    private void add(Long shareLinkId, int shard, long views) {
+        while (true) {
+            PendingViews pending = pendingByShareLink.computeIfAbsent(shareLinkId, id -> new PendingViews(shard));
+            pending.views.add(views);
+            if (!pending.retired) {
+                return;
+            }
+            pending.views.add(-views);
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    private static final class PendingViews {
+        private final int shard;
+        private final LongAdder views = new LongAdder();
+        private volatile boolean retired;
+
+        PendingViews(int shard) {
+            this.shard = shard;
+        }
+    }
+}
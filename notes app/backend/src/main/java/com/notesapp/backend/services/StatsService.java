@@ -1,13 +1,20 @@
 package com.notesapp.backend.services;
 
+import com.notesapp.backend.config.ShardContext;
+import com.notesapp.backend.config.ShardRegistry;
 import com.notesapp.backend.repositories.NoteRepository;
 import com.notesapp.backend.repositories.ShareLinkRepository;
 import com.notesapp.backend.repositories.UserRepository;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @Service
@@ -25,26 +32,69 @@ public class StatsService {
     @Autowired
     private FeedbackService feedbackService;
 
+    @Autowired
+    private ShardRegistry shardRegistry;
+
+    @Autowired
+    private InvalidationBus invalidationBus;
+
+    @Value("${notes.stats.cache-ttl-ms:60000}")
+    private long cacheTtlMillis;
+
+    private final TransactionTemplate readOnlyTransaction;
+    private volatile CachedStats cached;
+
+    public StatsService(PlatformTransactionManager transactionManager) {
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    // Counts may lag by up to the TTL; new feedback changes the satisfaction rate, so it evicts on every instance
+    @PostConstruct
+    public void subscribe() {
+        invalidationBus.subscribe(InvalidationBus.FEEDBACK, userId -> cached = null);
+        invalidationBus.onReset(() -> cached = null);
+    }
+
     public Map<String, Object> getPublicStats() {
+        CachedStats snapshot = cached;
+        if (snapshot != null && System.currentTimeMillis() - snapshot.computedAt() < cacheTtlMillis) {
+            return new HashMap<>(snapshot.stats());
+        }
+        return computePublicStats();
+    }
+
+    // Every shard is counted in parallel in its own read-only transaction; users only exist on the directory shard
+    private Map<String, Object> computePublicStats() {
         Map<String, Object> stats = new HashMap<>();
         
         try {
+            List<ShardStats> shards = shardRegistry.fanOut(shard -> readOnlyTransaction.execute(status -> new ShardStats(
+                    noteRepository.count(),
+                    shareLinkRepository.count(),
+                    userRepository.countUsersWithNotes(),
+                    feedbackService.getTotalFeedbackCount(),
+                    feedbackService.getAverageSatisfactionRating())));
+
             // Get total number of users
-            long totalUsers = userRepository.count();
+            long totalUsers = ShardContext.callOn(ShardContext.DIRECTORY_SHARD, () -> userRepository.count());
             
             // Get total number of notes
-            long totalNotes = noteRepository.count();
+            long totalNotes = shards.stream().mapToLong(ShardStats::notes).sum();
             
             // Get total number of shared links
-            long totalSharedLinks = shareLinkRepository.count();
+            long totalSharedLinks = shards.stream().mapToLong(ShardStats::shareLinks).sum();
             
-            // Calculate satisfaction rate based on user feedback ratings
-            Double avgSatisfactionRate = feedbackService.getAverageSatisfactionRating();
-            int satisfactionRate = avgSatisfactionRate.intValue();
+            // Calculate satisfaction rate based on user feedback ratings, weighted by each shard's feedback count
+            long feedbackCount = shards.stream().mapToLong(ShardStats::feedback).sum();
+            double avgSatisfactionRate = feedbackCount == 0 ? 0 : shards.stream()
+                    .mapToDouble(shard -> shard.satisfactionRate() * shard.feedback())
+                    .sum() / feedbackCount;
+            int satisfactionRate = (int) avgSatisfactionRate;
             
             // If no feedback yet, use engagement-based calculation
-            if (feedbackService.getTotalFeedbackCount() == 0) {
-                long usersWithNotes = userRepository.countUsersWithNotes();
+            if (feedbackCount == 0) {
+                long usersWithNotes = shards.stream().mapToLong(ShardStats::usersWithNotes).sum();
                 satisfactionRate = totalUsers > 0 ? (int) ((usersWithNotes * 100) / totalUsers) : 95;
                 // Make sure it's reasonable (between 85-95 for fallback)
                 if (satisfactionRate < 85) satisfactionRate = 85;
@@ -58,6 +108,7 @@ public class StatsService {
             stats.put("lastUpdated", LocalDateTime.now());
             
             System.out.println("[StatsService] Generated stats: " + stats);
+            cached = new CachedStats(new HashMap<>(stats), System.currentTimeMillis());
             
         } catch (Exception e) {
             System.err.println("[StatsService] Error generating stats: " + e.getMessage());
@@ -71,4 +122,8 @@ public class StatsService {
         
         return stats;
     }
+
+    private record CachedStats(Map<String, Object> stats, long computedAt) {}
+
+    private record ShardStats(long notes, long shareLinks, long usersWithNotes, long feedback, double satisfactionRate) {}
 }
@@ -1,47 +1,110 @@
 package com.notesapp.backend.services;
 
+import com.notesapp.backend.config.ShardContext;
+import com.notesapp.backend.config.ShardRegistry;
 import com.notesapp.backend.entities.User;
 import com.notesapp.backend.repositories.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
 @Service
 public class UserService implements UserDetailsService {
 
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final ShardRegistry shardRegistry;
+    private final InvalidationBus invalidationBus;
+    private final long cacheTtlMillis;
+    private final int cacheMaxEntries;
+
+    // Every authenticated request resolves its user here; changes made on other instances evict via InvalidationBus
+    private final Map<String, CachedUser> usersByEmail = new ConcurrentHashMap<>();
     
-    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder) {
+    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder, ShardRegistry shardRegistry,
+                       InvalidationBus invalidationBus,
+                       @Value("${notes.cache.users.ttl-ms:60000}") long cacheTtlMillis,
+                       @Value("${notes.cache.users.max-entries:10000}") int cacheMaxEntries) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
+        this.shardRegistry = shardRegistry;
+        this.invalidationBus = invalidationBus;
+        this.cacheTtlMillis = cacheTtlMillis;
+        this.cacheMaxEntries = cacheMaxEntries;
+
+        invalidationBus.subscribe(InvalidationBus.USER, userId -> evict(Long.valueOf(userId)));
+        invalidationBus.onReset(usersByEmail::clear);
     }
 
     @Override
     public UserDetails loadUserByUsername(String email) throws UsernameNotFoundException {
-        return userRepository.findByEmail(email)
+        return findCached(email)
                 .orElseThrow(() -> new UsernameNotFoundException("User not found with email: " + email));
     }
 
+    // Hashes before touching the database, then relies on the unique constraints instead of
+    // check-then-insert: one INSERT per signup, and two concurrent signups cannot both succeed
     public User createUser(String username, String email, String password) {
-        if (userRepository.existsByEmail(email)) {
-            throw new RuntimeException("Email already exists");
-        }
-        if (userRepository.existsByUsername(username)) {
-            throw new RuntimeException("Username already exists");
-        }
-
         User user = new User();
         user.setUsername(username);
         user.setEmail(email);
         user.setPassword(passwordEncoder.encode(password));
-        return userRepository.save(user);
+        user.setShard(shardRegistry.shardForNewUser(email));
+
+        try {
+            User saved = ShardContext.callOn(ShardContext.DIRECTORY_SHARD, () -> userRepository.save(user));
+            invalidationBus.publish(InvalidationBus.USER, saved.getId());
+            return saved;
+        } catch (DataIntegrityViolationException e) {
+            // Postgres reports the violated column as "Key (email)=(...) already exists"
+            String detail = String.valueOf(e.getMostSpecificCause().getMessage());
+            if (detail.contains("(email)")) {
+                throw new RuntimeException("Email already exists");
+            }
+            if (detail.contains("(username)")) {
+                throw new RuntimeException("Username already exists");
+            }
+            throw e;
+        }
     }
 
     public User findByEmail(String email) {
-        return userRepository.findByEmail(email).orElse(null);
+        return findCached(email).orElse(null);
     }
+
+    public void evict(Long userId) {
+        usersByEmail.values().removeIf(cached -> cached.user().getId().equals(userId));
+    }
+
+    // The users table only lives on the directory shard, whatever shard the request is routed to.
+    // Misses are not cached, so a user who just signed up on another instance is found at once.
+    private Optional<User> findCached(String email) {
+        CachedUser cached = usersByEmail.get(email);
+        long now = System.currentTimeMillis();
+        if (cached != null && now - cached.loadedAt() < cacheTtlMillis) {
+            return Optional.of(cached.user());
+        }
+
+        Optional<User> user = ShardContext.callOn(ShardContext.DIRECTORY_SHARD, () -> userRepository.findByEmail(email));
+        if (user.isPresent()) {
+            if (usersByEmail.size() >= cacheMaxEntries) {
+                usersByEmail.clear();
+            }
+            usersByEmail.put(email, new CachedUser(user.get(), now));
+        } else {
+            usersByEmail.remove(email);
+        }
+        return user;
+    }
+
+    private record CachedUser(User user, long loadedAt) {}
 }
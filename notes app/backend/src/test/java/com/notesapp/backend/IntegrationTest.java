@@ -0,0 +1,93 @@
+package com.notesapp.backend;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.notesapp.backend.services.FileStorageService;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Boots the whole application against a throwaway PostgreSQL, started once per JVM and shared by every
+// test class, so the Spring context is cached between them. Cloudinary is replaced by a mock.
+@SpringBootTest
+@AutoConfigureMockMvc
+@TestPropertySource(properties = {
+        "spring.jpa.show-sql=false",
+        "notes.rate-limit.enabled=false",
+        "notes.password.target-hash-ms=1",
+        "notes.password.min-strength=4",
+        "notes.password.max-strength=4"
+})
+public abstract class IntegrationTest {
+
+    private static final EmbeddedPostgres POSTGRES = startPostgres();
+
+    @DynamicPropertySource
+    static void datasource(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> POSTGRES.getJdbcUrl("postgres", "postgres"));
+        registry.add("spring.datasource.username", () -> "postgres");
+        registry.add("spring.datasource.password", () -> "postgres");
+    }
+
+    @Autowired
+    protected MockMvc mockMvc;
+
+    @Autowired
+    protected ObjectMapper objectMapper;
+
+    @MockBean
+    protected FileStorageService fileStorageService;
+
+    private static EmbeddedPostgres startPostgres() {
+        try {
+            return EmbeddedPostgres.start();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not start embedded PostgreSQL", e);
+        }
+    }
+
+    // Registers a fresh user and returns a bearer token for it
+    protected String newUserToken() throws Exception {
+        String suffix = UUID.randomUUID().toString().substring(0, 8);
+        String email = "user-" + suffix + "@example.com";
+        mockMvc.perform(post("/api/auth/register")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(json(Map.of("username", "user-" + suffix, "email", email, "password", "secret123"))))
+                .andExpect(status().isCreated());
+
+        String login = mockMvc.perform(post("/api/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(json(Map.of("email", email, "password", "secret123"))))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return "Bearer " + objectMapper.readTree(login).get("token").asText();
+    }
+
+    protected JsonNode createNote(String token, String title, String content) throws Exception {
+        String body = mockMvc.perform(post("/api/notes")
+                        .header("Authorization", token)
+                        .param("title", title)
+                        .param("content", content))
+                .andExpect(status().is2xxSuccessful())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readTree(body);
+    }
+
+    protected String json(Object value) throws Exception {
+        return objectMapper.writeValueAsString(value);
+    }
+}
@@ -0,0 +1,93 @@
+package com.notesapp.backend.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.notesapp.backend.entities.Note;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+// Response size and serialization cost of a GET /api/notes listing in each encoding WebConfig offers, with and
+// without the gzip Tomcat applies (server.compression.*). Notes are synthetic rich-text HTML like the editor's.
+// Not a test; run with
+//   mvn test-compile exec:java -Dexec.mainClass=com.notesapp.backend.config.ApiEncodingBenchmark -Dexec.classpathScope=test
+// Optional arguments: notes (default 1000), content size in chars (default 5000), iterations (default 50).
+public class ApiEncodingBenchmark {
+
+    private static final String[] WORDS = ("the quick brown fox jumps over lazy dog meeting notes project deadline "
+            + "review design api database index query cache server client request response latency throughput").split(" ");
+
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+
+        List<Note> notes = notes(count, size, new Random(42));
+        // The same builder settings Boot hands to WebConfig
+        encode("json", Jackson2ObjectMapperBuilder.json().build(), notes, iterations);
+        encode("cbor", Jackson2ObjectMapperBuilder.json().factory(new CBORFactory()).build(), notes, iterations);
+        encode("smile", Jackson2ObjectMapperBuilder.json().factory(new SmileFactory()).build(), notes, iterations);
+    }
+
+    private static void encode(String name, ObjectMapper mapper, List<Note> notes, int iterations) throws IOException {
+        byte[] body = null;
+        long bestSerialize = Long.MAX_VALUE;
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            body = mapper.writeValueAsBytes(notes);
+            bestSerialize = Math.min(bestSerialize, System.nanoTime() - start);
+        }
+
+        byte[] gzipped = null;
+        long bestGzip = Long.MAX_VALUE;
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            gzipped = gzip(body);
+            bestGzip = Math.min(bestGzip, System.nanoTime() - start);
+        }
+
+        System.out.printf("%-5s %9d B, serialize %6.1f ms | gzip -> %8d B (%.1f%%), gzip %6.1f ms (best of %d)%n",
+                name, body.length, bestSerialize / 1e6, gzipped.length, 100.0 * gzipped.length / body.length,
+                bestGzip / 1e6, iterations);
+    }
+
+    // Tomcat's compression uses GZIPOutputStream at the default level
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(body);
+        }
+        return out.toByteArray();
+    }
+
+    private static List<Note> notes(int count, int size, Random random) {
+        List<Note> notes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Note note = new Note("Note " + i, richText(size, random), null);
+            note.setId((long) i + 1);
+            note.setCreatedAt(LocalDateTime.now());
+            note.setUpdatedAt(LocalDateTime.now());
+            notes.add(note);
+        }
+        return notes;
+    }
+
+    private static String richText(int size, Random random) {
+        StringBuilder html = new StringBuilder(size + 256);
+        while (html.length() < size) {
+            html.append("<p><span style=\"font-family: Arial; color: rgb(").append(random.nextInt(255)).append(",0,0);\">");
+            for (int i = 0; i < 12 + random.nextInt(20); i++) {
+                html.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+            html.append("</span><strong>").append(random.nextInt(100_000)).append("</strong></p>\n");
+        }
+        return html.toString();
+    }
+}
@@ -0,0 +1,329 @@
+package com.notesapp.backend.controllers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.notesapp.backend.IntegrationTest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Many clients editing one note at once, as its owner or through an editor share link. Each client reads the
+// note, appends a unique line (PUT or PATCH) or an image, and sends the version it read; on 409 it reads again
+// and retries. Every line and image must be in the final note, which a last-write-wins run of the same workload
+// does not manage.
+class NoteConcurrencyStressTest extends IntegrationTest {
+
+    private static final int CLIENTS = 9;
+    private static final int WRITES_PER_CLIENT = 12;
+
+    private String token;
+    private long noteId;
+    private String shareId;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        token = newUserToken();
+        noteId = createNote(token, "Shared plan", "start\n").get("id").asLong();
+        String link = mockMvc.perform(post("/api/notes/" + noteId + "/share")
+                        .header("Authorization", token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(json(Map.of("accessLevel", "EDITOR"))))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        shareId = objectMapper.readTree(link).get("shareId").asText();
+        when(fileStorageService.storeFilesInCloudinary(any())).thenAnswer(invocation ->
+                List.of("https://res.cloudinary.com/demo/image/upload/notes-app/" + UUID.randomUUID() + ".jpg"));
+    }
+
+    @Test
+    void staleVersionIsRejectedWith409AndCurrentVersion() throws Exception {
+        mockMvc.perform(put("/api/notes/" + noteId)
+                        .header("Authorization", token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(json(Map.of("title", "Shared plan", "content", "first", "version", "0"))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.version").value(1));
+
+        mockMvc.perform(put("/api/notes/" + noteId)
+                        .header("Authorization", token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(json(Map.of("title", "Shared plan", "content", "second", "version", "0"))))
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.currentVersion").value(1));
+
+        mockMvc.perform(patch("/api/notes/" + noteId)
+                        .header("Authorization", token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(json(Map.of("baseVersion", 0, "edits", List.of(Map.of("offset", 0, "length", 0, "text", "x"))))))
+                .andExpect(status().isConflict());
+
+        mockMvc.perform(multipart("/api/notes/" + noteId + "/images")
+                        .file(image())
+                        .param("version", "0")
+                        .header("Authorization", token))
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.currentVersion").value(1));
+
+        assertThat(readNote().get("content").asText()).isEqualTo("first");
+    }
+
+    @Test
+    void staleVersionThroughShareLinkIsRejectedWith409() throws Exception {
+        mockMvc.perform(put("/api/notes/" + noteId)
+                        .header("Authorization", token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(json(Map.of("title", "Shared plan", "content", "owner", "version", "0"))))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(put("/api/public/notes/" + shareId)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(json(Map.of("title", "Shared plan", "content", "guest", "version", "0"))))
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.currentVersion").value(1));
+
+        mockMvc.perform(patch("/api/public/notes/" + shareId)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(json(Map.of("baseVersion", 0, "edits", List.of(Map.of("offset", 0, "length", 0, "text", "x"))))))
+                .andExpect(status().isConflict());
+
+        mockMvc.perform(multipart("/api/public/notes/" + shareId + "/images")
+                        .file(image())
+                        .param("version", "0"))
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.currentVersion").value(1));
+
+        JsonNode shared = readSharedNote();
+        assertThat(shared.get("content").asText()).isEqualTo("owner");
+        assertThat(shared.get("version").asLong()).isEqualTo(1);
+    }
+
+    @Test
+    void concurrentVersionedWritesLoseNothing() throws Exception {
+        AtomicInteger conflicts = new AtomicInteger();
+        List<Callable<Void>> clients = new ArrayList<>();
+        for (int client = 0; client < CLIENTS; client++) {
+            int id = client;
+            clients.add(() -> {
+                for (int write = 0; write < WRITES_PER_CLIENT; write++) {
+                    String line = "c" + id + "-w" + write;
+                    // Clients 0-2 are the owner, 3-5 go through the share link, 6-8 the owner again
+                    boolean viaShare = id / 3 == 1;
+                    switch (id % 3) {
+                        case 0 -> retryOnConflict(() -> viaShare ? appendLineWithSharedPut(line) : appendLineWithPut(line, true), conflicts);
+                        case 1 -> retryOnConflict(() -> viaShare ? appendLineWithSharedPatch(line) : appendLineWithPatch(line), conflicts);
+                        default -> retryOnConflict(() -> viaShare ? appendSharedImage() : appendImage(), conflicts);
+                    }
+                }
+                return null;
+            });
+        }
+
+        long elapsedNanos = runConcurrently(clients);
+
+        JsonNode note = readNote();
+        Set<String> lines = new HashSet<>(List.of(note.get("content").asText().split("\n")));
+        int textWriters = 0;
+        for (int client = 0; client < CLIENTS; client++) {
+            if (client % 3 == 2) {
+                continue;
+            }
+            textWriters++;
+            for (int write = 0; write < WRITES_PER_CLIENT; write++) {
+                assertThat(lines).contains("c" + client + "-w" + write);
+            }
+        }
+        int imageWrites = (CLIENTS - textWriters) * WRITES_PER_CLIENT;
+        assertThat(note.get("imageUrls")).hasSize(imageWrites);
+        assertThat(note.get("version").asLong()).isEqualTo((long) CLIENTS * WRITES_PER_CLIENT);
+
+        System.out.printf("[NoteConcurrencyStressTest] %d clients x %d writes: %d conflicts retried, %.0f writes/s%n",
+                CLIENTS, WRITES_PER_CLIENT, conflicts.get(), CLIENTS * WRITES_PER_CLIENT / (elapsedNanos / 1e9));
+    }
+
+    // Same read-append-write workload with and without the version. The unversioned run is faster per
+    // write but drops lines; the numbers are printed for comparison, only the versioned run is asserted.
+    @Test
+    void versionedWritesKeepEveryUpdateWhereLastWriteWinsDoesNot() throws Exception {
+        Result versioned = runPutWorkload(true);
+        setUp();
+        Result lastWriteWins = runPutWorkload(false);
+
+        assertThat(versioned.lost()).isZero();
+        System.out.printf("[NoteConcurrencyStressTest] versioned: %.0f writes/s, %d conflicts retried, %d of %d lines lost%n",
+                versioned.writesPerSecond(), versioned.conflicts(), versioned.lost(), versioned.writes());
+        System.out.printf("[NoteConcurrencyStressTest] last-write-wins: %.0f writes/s, %d of %d lines lost%n",
+                lastWriteWins.writesPerSecond(), lastWriteWins.lost(), lastWriteWins.writes());
+    }
+
+    private Result runPutWorkload(boolean versioned) throws Exception {
+        AtomicInteger conflicts = new AtomicInteger();
+        List<Callable<Void>> clients = new ArrayList<>();
+        for (int client = 0; client < CLIENTS; client++) {
+            int id = client;
+            clients.add(() -> {
+                for (int write = 0; write < WRITES_PER_CLIENT; write++) {
+                    String line = "c" + id + "-w" + write;
+                    retryOnConflict(() -> appendLineWithPut(line, versioned), conflicts);
+                }
+                return null;
+            });
+        }
+        long elapsedNanos = runConcurrently(clients);
+
+        Set<String> lines = new HashSet<>(List.of(readNote().get("content").asText().split("\n")));
+        int writes = CLIENTS * WRITES_PER_CLIENT;
+        int lost = 0;
+        for (int client = 0; client < CLIENTS; client++) {
+            for (int write = 0; write < WRITES_PER_CLIENT; write++) {
+                if (!lines.contains("c" + client + "-w" + write)) {
+                    lost++;
+                }
+            }
+        }
+        return new Result(writes, conflicts.get(), lost, writes / (elapsedNanos / 1e9));
+    }
+
+    private record Result(int writes, int conflicts, int lost, double writesPerSecond) {}
+
+    private interface Write {
+        MockHttpServletResponse attempt() throws Exception;
+    }
+
+    // Anything other than success or a version conflict fails the test
+    private void retryOnConflict(Write write, AtomicInteger conflicts) throws Exception {
+        while (true) {
+            MockHttpServletResponse response = write.attempt();
+            if (response.getStatus() == 200) {
+                return;
+            }
+            assertThat(response.getStatus()).as(response.getContentAsString()).isEqualTo(409);
+            conflicts.incrementAndGet();
+        }
+    }
+
+    private MockHttpServletResponse appendLineWithPut(String line, boolean versioned) throws Exception {
+        JsonNode note = readNote();
+        Map<String, String> body = new HashMap<>();
+        body.put("title", "Shared plan");
+        body.put("content", note.get("content").asText() + line + "\n");
+        if (versioned) {
+            body.put("version", note.get("version").asText());
+        }
+        return mockMvc.perform(put("/api/notes/" + noteId)
+                        .header("Authorization", token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(json(body)))
+                .andReturn().getResponse();
+    }
+
+    private MockHttpServletResponse appendLineWithPatch(String line) throws Exception {
+        JsonNode note = readNote();
+        int end = note.get("content").asText().length();
+        return mockMvc.perform(patch("/api/notes/" + noteId)
+                        .header("Authorization", token)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(json(Map.of("baseVersion", note.get("version").asLong(),
+                                "edits", List.of(Map.of("offset", end, "length", 0, "text", line + "\n"))))))
+                .andReturn().getResponse();
+    }
+
+    private MockHttpServletResponse appendImage() throws Exception {
+        JsonNode note = readNote();
+        return mockMvc.perform(multipart("/api/notes/" + noteId + "/images")
+                        .file(image())
+                        .param("version", note.get("version").asText())
+                        .header("Authorization", token))
+                .andReturn().getResponse();
+    }
+
+    private MockHttpServletResponse appendLineWithSharedPut(String line) throws Exception {
+        JsonNode note = readSharedNote();
+        return mockMvc.perform(put("/api/public/notes/" + shareId)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(json(Map.of("title", "Shared plan",
+                                "content", note.get("content").asText() + line + "\n",
+                                "version", note.get("version").asText()))))
+                .andReturn().getResponse();
+    }
+
+    private MockHttpServletResponse appendLineWithSharedPatch(String line) throws Exception {
+        JsonNode note = readSharedNote();
+        int end = note.get("content").asText().length();
+        return mockMvc.perform(patch("/api/public/notes/" + shareId)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(json(Map.of("baseVersion", note.get("version").asLong(),
+                                "edits", List.of(Map.of("offset", end, "length", 0, "text", line + "\n"))))))
+                .andReturn().getResponse();
+    }
+
+    private MockHttpServletResponse appendSharedImage() throws Exception {
+        JsonNode note = readSharedNote();
+        return mockMvc.perform(multipart("/api/public/notes/" + shareId + "/images")
+                        .file(image())
+                        .param("version", note.get("version").asText()))
+                .andReturn().getResponse();
+    }
+
+    private JsonNode readSharedNote() throws Exception {
+        MvcResult result = mockMvc.perform(get("/api/public/notes/" + shareId))
+                .andExpect(status().isOk())
+                .andReturn();
+        return objectMapper.readTree(result.getResponse().getContentAsString());
+    }
+
+    private JsonNode readNote() throws Exception {
+        MvcResult result = mockMvc.perform(get("/api/notes").header("Authorization", token))
+                .andExpect(status().isOk())
+                .andReturn();
+        for (JsonNode note : objectMapper.readTree(result.getResponse().getContentAsString())) {
+            if (note.get("id").asLong() == noteId) {
+                return note;
+            }
+        }
+        throw new AssertionError("Note " + noteId + " not listed");
+    }
+
+    private static MockMultipartFile image() {
+        return new MockMultipartFile("images", "photo.jpg", "image/jpeg", new byte[] { 1, 2, 3 });
+    }
+
+    private static long runConcurrently(List<Callable<Void>> clients) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(clients.size());
+        try {
+            long start = System.nanoTime();
+            List<Future<Void>> results = pool.invokeAll(clients);
+            for (Future<Void> result : results) {
+                result.get();
+            }
+            return System.nanoTime() - start;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
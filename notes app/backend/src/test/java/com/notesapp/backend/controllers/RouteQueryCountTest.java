@@ -0,0 +1,293 @@
+package com.notesapp.backend.controllers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.notesapp.backend.IntegrationTest;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+
+// Statements per request for every route of the note, auth, feedback and stats controllers, read from the
+// http.server.queries summary that QueryBudgetConfig records. Hibernate and JdbcTemplate statements are both
+// counted. Counts are exact, so a change that adds queries to a route (an N+1 through a lazy association, a lost
+// join fetch) fails here and has to change the expected count on purpose, and so does one that saves queries.
+// Not covered: statements run on other threads after the handler returns (the streamed export body, SSE pushes).
+class RouteQueryCountTest extends IntegrationTest {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private String token;
+    private long noteId;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        token = newUserToken();
+        noteId = createNote(token, "Plan", "first draft").get("id").asLong();
+        when(fileStorageService.storeFilesInCloudinary(any())).thenAnswer(invocation -> List.of(imageUrl()));
+        when(fileStorageService.storeFileInCloudinary(any(Path.class))).thenAnswer(invocation -> imageUrl());
+        when(fileStorageService.confirmDirectUpload(anyLong(), anyString(), anyString(), anyString()))
+                .thenAnswer(invocation -> imageUrl());
+    }
+
+    @Test
+    void noteRoutes() throws Exception {
+        expectQueries("GET /api/notes", 1, get("/api/notes").header("Authorization", token));
+        expectQueries("POST /api/notes", 2, post("/api/notes").header("Authorization", token)
+                .param("title", "Second").param("content", "text"));
+        expectQueries("PUT /api/notes/{id}", 3, put("/api/notes/" + noteId).header("Authorization", token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json(Map.of("title", "Plan", "content", "second draft", "version", "0"))));
+        expectQueries("PATCH /api/notes/{id}", 5, patch("/api/notes/" + noteId).header("Authorization", token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json(Map.of("baseVersion", 1, "edits", List.of(Map.of("offset", 0, "length", 6, "text", "third"))))));
+        expectQueries("GET /api/notes/{noteId}/revisions", 2,
+                get("/api/notes/" + noteId + "/revisions").header("Authorization", token));
+        expectQueries("GET /api/notes/{noteId}/revisions/{revision}", 3,
+                get("/api/notes/" + noteId + "/revisions/2").header("Authorization", token));
+        expectQueries("GET /api/notes/{noteId}/events", 1,
+                get("/api/notes/" + noteId + "/events").header("Authorization", token));
+        expectQueries("GET /api/notes/export", 0, get("/api/notes/export").header("Authorization", token));
+        expectQueries("POST /api/notes/import", 1, post("/api/notes/import").header("Authorization", token)
+                .contentType("application/x-ndjson")
+                .content("{\"title\":\"Imported\",\"content\":\"a\"}\n{\"title\":\"Imported too\",\"content\":\"b\"}\n"));
+        expectQueries("DELETE /api/notes/{id}", 1, delete("/api/notes/" + noteId).header("Authorization", token));
+    }
+
+    @Test
+    void batchRoutes() throws Exception {
+        MvcResult created = expectQueries("POST /api/notes/batch", 1, post("/api/notes/batch").header("Authorization", token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json(List.of(Map.of("title", "One", "content", "1"), Map.of("title", "Two", "content", "2")))));
+        JsonNode notes = objectMapper.readTree(created.getResponse().getContentAsString());
+        long first = notes.get(0).get("id").asLong();
+        long second = notes.get(1).get("id").asLong();
+
+        expectQueries("PUT /api/notes/batch", 5, put("/api/notes/batch").header("Authorization", token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json(List.of(Map.of("id", first, "title", "One", "content", "1b"),
+                        Map.of("id", second, "title", "Two", "content", "2b")))));
+        expectQueries("DELETE /api/notes/batch", 1, delete("/api/notes/batch").header("Authorization", token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json(Map.of("ids", List.of(first, second)))));
+    }
+
+    // Batch writes must not lock, load or record revisions note by note
+    @Test
+    void batchWritesDoNotGrowWithTheBatchSize() throws Exception {
+        assertThat(batchWriteQueries(20)).isEqualTo(batchWriteQueries(2));
+    }
+
+    @Test
+    void imageRoutes() throws Exception {
+        MvcResult added = expectQueries("POST /api/notes/{noteId}/images", 2, multipart("/api/notes/" + noteId + "/images")
+                .file(image()).header("Authorization", token));
+        String url = objectMapper.readTree(added.getResponse().getContentAsString()).get("imageUrls").get(0).asText();
+
+        expectQueries("POST /api/notes/{noteId}/images/upload-params", 1,
+                post("/api/notes/" + noteId + "/images/upload-params").header("Authorization", token));
+        expectQueries("POST /api/notes/{noteId}/images/confirm", 2, post("/api/notes/" + noteId + "/images/confirm")
+                .header("Authorization", token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json(Map.of("public_id", "notes-app/direct", "version", "1", "signature", "s"))));
+        expectQueries("DELETE /api/notes/{noteId}/images", 1, delete("/api/notes/" + noteId + "/images")
+                .header("Authorization", token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json(Map.of("imageUrl", url))));
+    }
+
+    @Test
+    void resumableUploadRoutes() throws Exception {
+        String uploadId = startUpload();
+        String base = "/api/notes/" + noteId + "/images/uploads/" + uploadId;
+
+        expectQueries("GET /api/notes/{noteId}/images/uploads/{uploadId}", 0, get(base).header("Authorization", token));
+        expectQueries("PUT /api/notes/{noteId}/images/uploads/{uploadId}", 0, put(base).param("offset", "0")
+                .header("Authorization", token)
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .content(new byte[] { 1, 2, 3 }));
+        expectQueries("POST /api/notes/{noteId}/images/uploads/{uploadId}/complete", 2,
+                post(base + "/complete").header("Authorization", token));
+
+        String abandoned = startUpload();
+        expectQueries("DELETE /api/notes/{noteId}/images/uploads/{uploadId}", 0,
+                delete("/api/notes/" + noteId + "/images/uploads/" + abandoned).header("Authorization", token));
+    }
+
+    @Test
+    void shareRoutes() throws Exception {
+        String shareId = share("EDITOR");
+
+        expectQueries("GET /api/notes/{noteId}/shares", 1,
+                get("/api/notes/" + noteId + "/shares").header("Authorization", token));
+        expectQueries("GET /api/public/notes/{shareId}", 1, get("/api/public/notes/" + shareId));
+        expectQueries("GET /api/public/notes/{shareId}/events", 1, get("/api/public/notes/" + shareId + "/events"));
+        expectQueries("PUT /api/public/notes/{shareId}", 5, put("/api/public/notes/" + shareId)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json(Map.of("title", "Plan", "content", "shared edit", "version", "0"))));
+        expectQueries("PATCH /api/public/notes/{shareId}", 5, patch("/api/public/notes/" + shareId)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json(Map.of("baseVersion", 1, "edits", List.of(Map.of("offset", 0, "length", 0, "text", "!"))))));
+        MvcResult added = expectQueries("POST /api/public/notes/{shareId}/images", 3,
+                multipart("/api/public/notes/" + shareId + "/images").file(image()));
+        String url = objectMapper.readTree(added.getResponse().getContentAsString()).get("imageUrls").get(0).asText();
+        expectQueries("DELETE /api/public/notes/{shareId}/images", 2, delete("/api/public/notes/" + shareId + "/images")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json(Map.of("imageUrl", url))));
+        expectQueries("DELETE /api/shares/{shareId}", 2, delete("/api/shares/" + shareId).header("Authorization", token));
+    }
+
+    // Lists must not load images, share links or owners note by note
+    @Test
+    void listingsDoNotGrowWithTheNumberOfNotes() throws Exception {
+        String shareId = share("VIEWER");
+        int notes = queriesOf("GET /api/notes", get("/api/notes").header("Authorization", token));
+        int shares = queriesOf("GET /api/notes/{noteId}/shares", get("/api/notes/" + noteId + "/shares").header("Authorization", token));
+        int sharedNote = queriesOf("GET /api/public/notes/{shareId}", get("/api/public/notes/" + shareId));
+
+        for (int i = 0; i < 5; i++) {
+            long other = createNote(token, "Note " + i, "text").get("id").asLong();
+            mockMvc.perform(multipart("/api/notes/" + other + "/images").file(image()).header("Authorization", token));
+            share("VIEWER");
+            mockMvc.perform(multipart("/api/notes/" + noteId + "/images").file(image()).header("Authorization", token));
+        }
+
+        assertThat(queriesOf("GET /api/notes", get("/api/notes").header("Authorization", token))).isEqualTo(notes);
+        assertThat(queriesOf("GET /api/notes/{noteId}/shares", get("/api/notes/" + noteId + "/shares")
+                .header("Authorization", token))).isEqualTo(shares);
+        assertThat(queriesOf("GET /api/public/notes/{shareId}", get("/api/public/notes/" + shareId))).isEqualTo(sharedNote);
+    }
+
+    @Test
+    void authRoutes() throws Exception {
+        String email = "budget-" + UUID.randomUUID() + "@example.com";
+        expectQueries("POST /api/auth/register", 1, post("/api/auth/register")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json(Map.of("username", "budget" + UUID.randomUUID().toString().substring(0, 8),
+                        "email", email, "password", "secret123"))));
+        expectQueries("POST /api/auth/login", 1, post("/api/auth/login")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json(Map.of("email", email, "password", "secret123"))));
+    }
+
+    @Test
+    void feedbackRoutes() throws Exception {
+        expectQueries("POST /api/feedback/submit", 2, post("/api/feedback/submit").header("Authorization", token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json(Map.of("rating", 4, "message", "Useful"))));
+        expectQueries("GET /api/feedback/status", 2, get("/api/feedback/status").header("Authorization", token));
+        expectQueries("PUT /api/feedback/update", 2, put("/api/feedback/update").header("Authorization", token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json(Map.of("rating", 5, "message", "Very useful"))));
+    }
+
+    @Test
+    void statsRoute() throws Exception {
+        expectQueries("GET /api/public/stats", 6, get("/api/public/stats"));
+    }
+
+    // route is "METHOD pattern" as recorded in the summary's tags; the request must succeed
+    private MvcResult expectQueries(String route, int expected, MockHttpServletRequestBuilder request) throws Exception {
+        Recorded before = recorded(route);
+        MvcResult result = mockMvc.perform(request).andReturn();
+        assertThat(result.getResponse().getStatus()).as(route + ": " + result.getResponse().getContentAsString())
+                .isBetween(200, 299);
+
+        Recorded after = recorded(route);
+        assertThat(after.requests() - before.requests()).as(route + " recorded once").isEqualTo(1);
+        int queries = (int) (after.queries() - before.queries());
+        assertThat(queries).as(route + " issued " + queries + " statements").isEqualTo(expected);
+        return result;
+    }
+
+    private int queriesOf(String route, MockHttpServletRequestBuilder request) throws Exception {
+        Recorded before = recorded(route);
+        mockMvc.perform(request);
+        return (int) (recorded(route).queries() - before.queries());
+    }
+
+    // Statements of PUT and DELETE /api/notes/batch over a fresh batch of the given size
+    private List<Integer> batchWriteQueries(int size) throws Exception {
+        List<Map<String, String>> drafts = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            drafts.add(Map.of("title", "Note " + i, "content", "text " + i));
+        }
+        MvcResult created = mockMvc.perform(post("/api/notes/batch").header("Authorization", token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json(drafts))).andReturn();
+
+        List<Map<String, Object>> updates = new ArrayList<>();
+        List<Long> ids = new ArrayList<>();
+        for (JsonNode note : objectMapper.readTree(created.getResponse().getContentAsString())) {
+            updates.add(Map.of("id", note.get("id").asLong(), "title", note.get("title").asText(), "content", "edited"));
+            ids.add(note.get("id").asLong());
+        }
+        assertThat(ids).hasSize(size);
+
+        int update = queriesOf("PUT /api/notes/batch", put("/api/notes/batch").header("Authorization", token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json(updates)));
+        int delete = queriesOf("DELETE /api/notes/batch", delete("/api/notes/batch").header("Authorization", token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json(Map.of("ids", ids))));
+        return List.of(update, delete);
+    }
+
+    private Recorded recorded(String route) {
+        String[] parts = route.split(" ", 2);
+        DistributionSummary summary = meterRegistry.find("http.server.queries")
+                .tag("method", parts[0])
+                .tag("uri", parts[1])
+                .summary();
+        return summary != null ? new Recorded(summary.count(), summary.totalAmount()) : new Recorded(0, 0);
+    }
+
+    private record Recorded(long requests, double queries) {}
+
+    private String startUpload() throws Exception {
+        MvcResult result = expectQueries("POST /api/notes/{noteId}/images/uploads", 1, post("/api/notes/" + noteId + "/images/uploads")
+                .header("Authorization", token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json(Map.of("size", 3))));
+        return objectMapper.readTree(result.getResponse().getContentAsString()).get("uploadId").asText();
+    }
+
+    private String share(String accessLevel) throws Exception {
+        MvcResult result = expectQueries("POST /api/notes/{noteId}/share", 1, post("/api/notes/" + noteId + "/share")
+                .header("Authorization", token)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(json(Map.of("accessLevel", accessLevel))));
+        return objectMapper.readTree(result.getResponse().getContentAsString()).get("shareId").asText();
+    }
+
+    private static String imageUrl() {
+        return "https://res.cloudinary.com/demo/image/upload/notes-app/" + UUID.randomUUID() + ".jpg";
+    }
+
+    private static MockMultipartFile image() {
+        return new MockMultipartFile("images", "photo.jpg", "image/jpeg", new byte[] { 1, 2, 3 });
+    }
+}
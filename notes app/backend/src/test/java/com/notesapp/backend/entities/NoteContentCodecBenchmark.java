@@ -0,0 +1,65 @@
+package com.notesapp.backend.entities;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+// Size and CPU cost of NoteContentCodec at different deflate levels, on synthetic rich-text HTML similar to what
+// the editor produces. Not a test; run with
+//   mvn test-compile exec:java -Dexec.mainClass=com.notesapp.backend.entities.NoteContentCodecBenchmark -Dexec.classpathScope=test
+// Optional arguments: content size in chars (default 200000) and iterations (default 300).
+public class NoteContentCodecBenchmark {
+
+    private static final String[] WORDS = ("the quick brown fox jumps over lazy dog meeting notes project deadline "
+            + "review design api database index query cache server client request response latency throughput").split(" ");
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+
+        String content = richText(size, new Random(42));
+        int rawBytes = content.getBytes(StandardCharsets.UTF_8).length;
+
+        for (int level : new int[] { 1, 6, 9 }) {
+            NoteContentCodec.configure(true, 0, level);
+            byte[] deflated = null;
+            long bestDeflate = Long.MAX_VALUE;
+            long bestInflate = Long.MAX_VALUE;
+
+            for (int i = 0; i < iterations; i++) {
+                long start = System.nanoTime();
+                deflated = NoteContentCodec.deflateIfLarge(content);
+                bestDeflate = Math.min(bestDeflate, System.nanoTime() - start);
+                if (deflated == null) {
+                    break;
+                }
+
+                start = System.nanoTime();
+                String inflated = NoteContentCodec.inflate(deflated);
+                bestInflate = Math.min(bestInflate, System.nanoTime() - start);
+                if (inflated.length() != content.length()) {
+                    throw new IllegalStateException("Round trip changed the content");
+                }
+            }
+
+            if (deflated == null) {
+                System.out.printf("level %d: not stored compressed (saves under 10%%)%n", level);
+            } else {
+                System.out.printf("level %d: %d -> %d bytes (%.1f%%), deflate %.2f ms, inflate %.2f ms (best of %d)%n",
+                        level, rawBytes, deflated.length, 100.0 * deflated.length / rawBytes,
+                        bestDeflate / 1e6, bestInflate / 1e6, iterations);
+            }
+        }
+    }
+
+    private static String richText(int size, Random random) {
+        StringBuilder html = new StringBuilder(size + 256);
+        while (html.length() < size) {
+            html.append("<p><span style=\"font-family: Arial; color: rgb(").append(random.nextInt(255)).append(",0,0);\">");
+            for (int i = 0; i < 12 + random.nextInt(20); i++) {
+                html.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+            html.append("</span><strong>").append(random.nextInt(100_000)).append("</strong></p>\n");
+        }
+        return html.toString();
+    }
+}
@@ -0,0 +1,123 @@
+package com.notesapp.backend.services;
+
+import com.notesapp.backend.entities.Note;
+import com.notesapp.backend.entities.User;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Autosave latency and database writes with and without the write-behind buffer. Editors save their own note
+// every few milliseconds; the database is a stub that sleeps for the write latency. Not a test; run with
+//   mvn test-compile exec:java -Dexec.mainClass=com.notesapp.backend.services.AutosaveBufferBenchmark -Dexec.classpathScope=test
+// Optional arguments: editors (default 32), saves per editor (default 400), write latency in ms (default 3).
+public class AutosaveBufferBenchmark {
+
+    private static final long SAVE_INTERVAL_MS = 5;
+    private static final long FLUSH_INTERVAL_MS = 200;
+
+    public static void main(String[] args) throws Exception {
+        int editors = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int saves = args.length > 1 ? Integer.parseInt(args[1]) : 400;
+        long writeLatencyMs = args.length > 2 ? Long.parseLong(args[2]) : 3;
+
+        SlowNoteService direct = new SlowNoteService(writeLatencyMs);
+        report("direct", run(editors, saves, (noteId, user, text) ->
+                direct.updateNote(noteId, "Draft", text, null, user)), direct.writes.get(), editors * saves);
+
+        SlowNoteService behind = new SlowNoteService(writeLatencyMs);
+        AutosaveBuffer buffer = new AutosaveBuffer();
+        ReflectionTestUtils.setField(buffer, "noteService", behind);
+        ReflectionTestUtils.setField(buffer, "enabled", true);
+        ReflectionTestUtils.setField(buffer, "maxPending", Integer.MAX_VALUE);
+
+        ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor();
+        flusher.scheduleWithFixedDelay(buffer::flushAll, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        long[] latencies = run(editors, saves, (noteId, user, text) -> buffer.buffer(noteId, "Draft", text, user));
+        flusher.shutdown();
+        flusher.awaitTermination(5, TimeUnit.SECONDS);
+        buffer.flushAll();
+        report("write-behind", latencies, behind.writes.get(), editors * saves);
+    }
+
+    private interface Save {
+        void save(Long noteId, User user, String text);
+    }
+
+    private static long[] run(int editors, int saves, Save save) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(editors);
+        try {
+            List<Future<long[]>> results = new ArrayList<>();
+            for (int editor = 0; editor < editors; editor++) {
+                long noteId = editor + 1;
+                User user = new User("editor" + noteId, "editor" + noteId + "@example.com", "x");
+                user.setId(noteId);
+                results.add(pool.submit(() -> {
+                    long[] latencies = new long[saves];
+                    StringBuilder text = new StringBuilder();
+                    for (int i = 0; i < saves; i++) {
+                        text.append('x');
+                        long start = System.nanoTime();
+                        save.save(noteId, user, text.toString());
+                        latencies[i] = System.nanoTime() - start;
+                        Thread.sleep(SAVE_INTERVAL_MS);
+                    }
+                    return latencies;
+                }));
+            }
+
+            long[] all = new long[editors * saves];
+            int offset = 0;
+            for (Future<long[]> result : results) {
+                long[] latencies = result.get();
+                System.arraycopy(latencies, 0, all, offset, latencies.length);
+                offset += latencies.length;
+            }
+            Arrays.sort(all);
+            return all;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void report(String mode, long[] sortedLatencies, long writes, int saves) {
+        System.out.printf("%-12s %d saves -> %d database writes, save latency p50 %.3f ms, p99 %.3f ms, max %.3f ms%n",
+                mode, saves, writes,
+                sortedLatencies[sortedLatencies.length / 2] / 1e6,
+                sortedLatencies[(int) (sortedLatencies.length * 0.99)] / 1e6,
+                sortedLatencies[sortedLatencies.length - 1] / 1e6);
+    }
+
+    // Stands in for the database: every write takes the configured latency
+    private static class SlowNoteService extends NoteService {
+        private final long writeLatencyMs;
+        private final AtomicLong writes = new AtomicLong();
+
+        SlowNoteService(long writeLatencyMs) {
+            super(null);
+            this.writeLatencyMs = writeLatencyMs;
+        }
+
+        @Override
+        public void checkNoteOwner(Long noteId, User user) {
+        }
+
+        @Override
+        public Note updateNote(Long noteId, String title, String content, Long expectedVersion, User user) {
+            writes.incrementAndGet();
+            try {
+                Thread.sleep(writeLatencyMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }
+    }
+}
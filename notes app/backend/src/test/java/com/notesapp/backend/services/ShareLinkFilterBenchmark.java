@@ -0,0 +1,83 @@
+package com.notesapp.backend.services;
+
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Public share link lookups under a flood of random ids, the traffic of someone enumerating share links.
+// Measures what the lookup path does before any query: parsing the id and asking ShareLinkFilter, and how many
+// ids get past the filter and would cost a database query. Without the filter every one of them would.
+// Not a test; run with
+//   mvn test-compile exec:java -Dexec.mainClass=com.notesapp.backend.services.ShareLinkFilterBenchmark -Dexec.classpathScope=test
+// Optional arguments: live links (default 1000000), threads (default 8), lookups per thread (default 2000000).
+public class ShareLinkFilterBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int links = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int lookups = args.length > 2 ? Integer.parseInt(args[2]) : 2_000_000;
+
+        // A disabled bus is the single-instance setup, where the filter is trusted without invalidation events
+        ShareLinkFilter filter = new ShareLinkFilter(null, null, new InvalidationBus(null, null, false, 0), links, 0.01, 0.1);
+        List<UUID> live = new ArrayList<>(links);
+        for (int i = 0; i < links; i++) {
+            UUID shareId = UUID.randomUUID();
+            filter.add(shareId);
+            live.add(shareId);
+        }
+        ReflectionTestUtils.setField(filter, "ready", true);
+
+        // A filter must never reject a link that exists
+        for (UUID shareId : live) {
+            if (!filter.mightContain(shareId)) {
+                throw new IllegalStateException("False negative for " + shareId);
+            }
+        }
+
+        // Warm-up, then the measured flood
+        flood(filter, threads, lookups / 10);
+        long start = System.nanoTime();
+        long passed = flood(filter, threads, lookups);
+        long elapsed = System.nanoTime() - start;
+
+        long total = (long) threads * lookups;
+        System.out.printf("%d live links, %d random lookups on %d threads in %.0f ms: %.1f M lookups/s, %.0f ns each%n",
+                links, total, threads, elapsed / 1e6, total / (elapsed / 1e3), (double) elapsed * threads / total);
+        System.out.printf("%d reached the database (%.3f%% false positives); without the filter all %d would%n",
+                passed, 100.0 * passed / total, total);
+    }
+
+    // Ids are formatted and parsed as they would be from the request path
+    private static long flood(ShareLinkFilter filter, int threads, int lookups) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Long>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                results.add(pool.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    long passed = 0;
+                    for (int i = 0; i < lookups; i++) {
+                        String path = new UUID(random.nextLong(), random.nextLong()).toString();
+                        if (filter.mightContain(UUID.fromString(path))) {
+                            passed++;
+                        }
+                    }
+                    return passed;
+                }));
+            }
+            long passed = 0;
+            for (Future<Long> result : results) {
+                passed += result.get();
+            }
+            return passed;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}